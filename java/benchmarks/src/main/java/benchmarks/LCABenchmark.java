@@ -0,0 +1,136 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.Tree;
+import model.Vertex;
+
+/**
+ * Time of a batch of lowest common ancestor queries on random pairs of
+ * leaves, answered with the sparse table index of {@link Tree#getLCA} and
+ * {@link Tree#getLCAs}, or by walking up with {@link Tree#getLCAByWalking}.
+ * The trees are random (merging random pairs of subtrees, so of logarithmic
+ * expected depth) or caterpillars (of linear depth). {@link #indexWithBuild}
+ * also builds the index for a new tree on the same vertices (the tree itself
+ * is constructed outside of the measurement), to find the number of queries
+ * from which the index pays off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LCABenchmark {
+
+	public enum Shape {
+		RANDOM, CATERPILLAR
+	}
+
+	@Param({ "1000", "100000" })
+	public int n;
+
+	@Param({ "RANDOM", "CATERPILLAR" })
+	public Shape shape;
+
+	@Param({ "100", "10000" })
+	public int queries;
+
+	private Vertex root;
+	private Tree tree;
+	private Vertex[] firsts;
+	private Vertex[] seconds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(31L * n + shape.ordinal());
+		root = generateRoot(shape, n, random);
+		tree = new Tree(root, n);
+		tree.getLCA(root, root); // builds the index
+
+		Vertex[] leaves = tree.getLeavesInIndexOrder();
+		firsts = new Vertex[queries];
+		seconds = new Vertex[queries];
+		for (int i = 0; i < queries; i++) {
+			firsts[i] = leaves[random.nextInt(n)];
+			seconds[i] = leaves[random.nextInt(n)];
+		}
+	}
+
+	/**
+	 * Creates the vertices of a tree with n leaves, with ids 1, ..., n for the
+	 * leaves and n+1, ..., 2n-1 for the inner vertices, and returns the root.
+	 */
+	static Vertex generateRoot(Shape shape, int n, Random random) {
+		Vertex[] subtrees = new Vertex[n];
+		for (int i = 0; i < n; i++) {
+			subtrees[i] = new Vertex(i + 1);
+		}
+		int id = n + 1;
+		if (shape == Shape.CATERPILLAR) {
+			Vertex vertex = subtrees[0];
+			for (int i = 1; i < n; i++) {
+				vertex = new Vertex(id++, vertex, subtrees[i]);
+			}
+			return vertex;
+		}
+		for (int size = n; size > 1; size--) {
+			int first = random.nextInt(size);
+			Vertex firstSubtree = subtrees[first];
+			subtrees[first] = subtrees[size - 1];
+			int second = random.nextInt(size - 1);
+			subtrees[second] = new Vertex(id++, firstSubtree, subtrees[second]);
+		}
+		return subtrees[0];
+	}
+
+	@Benchmark
+	public void index(Blackhole blackhole) {
+		for (int i = 0; i < queries; i++) {
+			blackhole.consume(tree.getLCA(firsts[i], seconds[i]));
+		}
+	}
+
+	@Benchmark
+	public void indexBatch(Blackhole blackhole) {
+		blackhole.consume(tree.getLCAs(firsts, seconds));
+	}
+
+	@Benchmark
+	public void walking(Blackhole blackhole) {
+		for (int i = 0; i < queries; i++) {
+			blackhole.consume(tree.getLCAByWalking(firsts[i], seconds[i]));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class FreshTree {
+		private Tree tree;
+
+		/** A new tree on the same vertices, whose index is not built yet. */
+		@Setup(Level.Invocation)
+		public void setUp(LCABenchmark benchmark) {
+			tree = new Tree(benchmark.root, benchmark.n);
+		}
+	}
+
+	@Benchmark
+	public void indexWithBuild(FreshTree fresh, Blackhole blackhole) {
+		blackhole.consume(fresh.tree.getLCAs(firsts, seconds));
+	}
+}
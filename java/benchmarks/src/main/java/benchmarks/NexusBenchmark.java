@@ -0,0 +1,141 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.TreeParser;
+import io.TreeParser.TreeIterator;
+import model.Tree;
+
+/**
+ * Time to read and parse all trees of a NEXUS file, as written by BEAST, with
+ * n taxa and random trees with branch lengths, sequentially with
+ * {@link TreeParser#iterateTrees(File, String)} and
+ * {@link TreeParser#streamTrees(File, String)}, or with a thread pool that
+ * parses the given number of trees ahead with
+ * {@link TreeParser#iterateTrees(File, String, ExecutorService, int)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NexusBenchmark {
+
+	private static final int NUMBER_OF_TREES = 200;
+
+	@Param({ "100", "1000" })
+	public int n;
+
+	@Param({ "4" })
+	public int threads;
+
+	@Param({ "16" })
+	public int prefetch;
+
+	private File nexusFile;
+	private ExecutorService executor;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		nexusFile = File.createTempFile("trees-n" + n, ".trees");
+		nexusFile.deleteOnExit();
+		writeNexus(nexusFile, n, NUMBER_OF_TREES, new Random(n));
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdown();
+		nexusFile.delete();
+	}
+
+	/** Writes a NEXUS file with the given number of random trees on n taxa. */
+	static void writeNexus(File file, int n, int numberOfTrees, Random random) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+			writer.write("#NEXUS\n\nBegin taxa;\n\tDimensions ntax=" + n + ";\n\t\tTaxlabels\n");
+			for (int i = 1; i <= n; i++) {
+				writer.write("\t\t\ttaxon" + i + "\n");
+			}
+			writer.write("\t\t\t;\nEnd;\nBegin trees;\n\tTranslate\n");
+			for (int i = 1; i <= n; i++) {
+				writer.write("\t\t" + i + " taxon" + i + ((i < n) ? ",\n" : "\n"));
+			}
+			writer.write(";\n");
+			for (int tree = 0; tree < numberOfTrees; tree++) {
+				writer.write("tree STATE_" + (1000 * tree) + " = " + generateNewick(n, random) + ";\n");
+			}
+			writer.write("End;\n");
+		}
+	}
+
+	/** Merges random pairs of subtrees, each with a random branch length. */
+	private static String generateNewick(int n, Random random) {
+		String[] subtrees = new String[n];
+		for (int i = 0; i < n; i++) {
+			subtrees[i] = (i + 1) + "[&pop=" + random.nextInt(1000) + "]";
+		}
+		for (int size = n; size > 1; size--) {
+			int first = random.nextInt(size);
+			String firstSubtree = subtrees[first] + branchLength(random);
+			subtrees[first] = subtrees[size - 1];
+			int second = random.nextInt(size - 1);
+			subtrees[second] = "(" + firstSubtree + "," + subtrees[second] + branchLength(random) + ")";
+		}
+		return subtrees[0];
+	}
+
+	private static String branchLength(Random random) {
+		return String.format(Locale.ROOT, ":%.10f", random.nextDouble());
+	}
+
+	@Benchmark
+	public void sequential(Blackhole blackhole) throws IOException {
+		try (TreeIterator trees = new TreeParser().iterateTrees(nexusFile, "tree")) {
+			while (trees.hasNext()) {
+				blackhole.consume(trees.next());
+			}
+		}
+	}
+
+	@Benchmark
+	public void stream(Blackhole blackhole) throws IOException {
+		try (Stream<Tree> trees = new TreeParser().streamTrees(nexusFile, "tree")) {
+			trees.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public void prefetching(Blackhole blackhole) throws IOException {
+		try (TreeIterator trees = new TreeParser().iterateTrees(nexusFile, "tree", executor, prefetch)) {
+			while (trees.hasNext()) {
+				blackhole.consume(trees.next());
+			}
+		}
+	}
+}
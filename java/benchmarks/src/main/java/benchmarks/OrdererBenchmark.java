@@ -0,0 +1,120 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import algorithms.DPGeophylogenyOrderer;
+import algorithms.DPGeophylogenyOrderer.DPStrategy;
+import algorithms.GreedyGeophylogenyOrderOptimizer;
+import algorithms.ParallelDPGeophylogenyOrderer;
+import algorithms.TopDownGeophylogenyOrderer;
+import experiments.GeophylogenyInstanceCreater;
+import model.Geophylogeny;
+import model.Leader.GeophylogenyLeaderType;
+
+/**
+ * Throughput of each orderer and of the crossing counter on generated
+ * instances, by instance family, number of taxa n, and leader type. Instances
+ * are generated with {@link GeophylogenyInstanceCreater} and a fixed seed per
+ * family and n. Orderers are constructed in each operation and only compute an
+ * embedding, so the instance stays the same. Run with -prof gc for allocation
+ * rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrdererBenchmark {
+
+	public enum Family {
+		UNIFORM, COASTLINE, CLUSTERED
+	}
+
+	private static final int MAP_WIDTH = 500;
+	private static final int MAP_HEIGHT = 300;
+	private static final int NUM_CLUSTERS = 3;
+
+	@Param({ "20", "50", "100" })
+	public int n;
+
+	@Param({ "S", "PO" })
+	public GeophylogenyLeaderType leaderType;
+
+	@Param({ "UNIFORM", "COASTLINE", "CLUSTERED" })
+	public Family family;
+
+	private Geophylogeny geophylogeny;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		geophylogeny = generateInstance(family, n);
+		geophylogeny.setLeaderType(leaderType);
+	}
+
+	static Geophylogeny generateInstance(Family family, int n) {
+		long seed = 31L * n + family.ordinal();
+		String name = family.toString().toLowerCase() + "-n" + n + "-s" + seed;
+		return switch (family) {
+		case UNIFORM -> GeophylogenyInstanceCreater.generateUniformInstance(MAP_WIDTH, MAP_HEIGHT, n, name, seed);
+		case COASTLINE -> GeophylogenyInstanceCreater.generateCoastlineInstance(MAP_WIDTH, MAP_HEIGHT, n, name,
+				seed);
+		case CLUSTERED -> GeophylogenyInstanceCreater.generateClusteredInstance(MAP_WIDTH, MAP_HEIGHT, n,
+				NUM_CLUSTERS, name, seed);
+		};
+	}
+
+	@Benchmark
+	public void topDown(Blackhole blackhole) {
+		blackhole.consume(new TopDownGeophylogenyOrderer(geophylogeny).computeEmbedding());
+	}
+
+	@Benchmark
+	public void dpEuclidean(Blackhole blackhole) {
+		blackhole.consume(new DPGeophylogenyOrderer(geophylogeny, DPStrategy.EuclideanDistance).computeEmbedding());
+	}
+
+	@Benchmark
+	public void dpHorizontal(Blackhole blackhole) {
+		blackhole.consume(new DPGeophylogenyOrderer(geophylogeny, DPStrategy.HorizontalDistance).computeEmbedding());
+	}
+
+	@Benchmark
+	public void dpHops(Blackhole blackhole) {
+		blackhole.consume(new DPGeophylogenyOrderer(geophylogeny, DPStrategy.Hops).computeEmbedding());
+	}
+
+	@Benchmark
+	public void dpCrossings(Blackhole blackhole) {
+		blackhole.consume(new DPGeophylogenyOrderer(geophylogeny, DPStrategy.Crossings).computeEmbedding());
+	}
+
+	@Benchmark
+	public void parallelDPCrossings(Blackhole blackhole) {
+		blackhole.consume(new ParallelDPGeophylogenyOrderer(geophylogeny, DPStrategy.Crossings).computeEmbedding());
+	}
+
+	@Benchmark
+	public void greedyOptimizer(Blackhole blackhole) {
+		blackhole.consume(new GreedyGeophylogenyOrderOptimizer(geophylogeny).computeEmbedding());
+	}
+
+	@Benchmark
+	public void crossings(Blackhole blackhole) {
+		blackhole.consume(geophylogeny.computeNumberOfCrossings());
+	}
+}
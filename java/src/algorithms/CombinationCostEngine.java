@@ -0,0 +1,184 @@
+package algorithms;
+
+import model.CompactTree;
+import model.Geophylogeny;
+import model.Leader.GeophylogenyLeaderType;
+import model.LeaderCrossingCounter;
+import model.Site;
+
+/**
+ * This class computes the combination costs of the {@link DPGeophylogenyOrderer}
+ * with strategy {@link DPGeophylogenyOrderer.DPStrategy#Crossings}, that is, the
+ * number of crossings between the leaders of the two subtrees of a vertex when
+ * the subtrees are placed next to each other in the orders recovered from the
+ * dynamic program.
+ *
+ * For each parent, the leaders of the two children get fixed slots, the leaders
+ * of the first child before those of the second child, with their sites and
+ * their order by site height computed once. The recovered layout of a child at
+ * a position then only assigns positions to its slots; the leaders are never
+ * sorted by their leaves, since recovering the layouts from left to right
+ * already yields this order. The crossings between the two groups of slots are
+ * counted with the sweeps of the {@link LeaderCrossingCounter} in
+ * O(c log c + k) time for a clade of size c (and k crossings for s-leaders)
+ * instead of testing all pairs of leaders.
+ *
+ * An engine keeps the slots of the last prepared parent and is thus not
+ * thread-safe; parallel computations use one engine per thread.
+ */
+class CombinationCostEngine {
+
+	private DPGeophylogenyOrderer orderer;
+	private Geophylogeny geophylogeny;
+	private CompactTree tree;
+	private GeophylogenyLeaderType leaderType;
+
+	/** Parent whose children are combined, or -1 if none was prepared. */
+	private int parent = -1;
+
+	/** Slot of each leaf (by index) among the leaders of the current parent. */
+	private int[] slotOfLeaf;
+
+	/** Leaders of the current parent by slot. */
+	private double[] leafX;
+	private double[] siteX;
+	private double[] siteY;
+	private int numSlots;
+	private int numFirstSlots;
+
+	/** Slots ordered by leaf x-coordinate and by site y-coordinate. */
+	private int[] byLeaf;
+	private int[] byHeight;
+
+	/** Buffer for sorting the slots by height. */
+	private int[] sortBuffer;
+
+	/** Stack for recovering layouts. */
+	private int[] stackVertex;
+	private int[] stackPosition;
+
+	CombinationCostEngine(DPGeophylogenyOrderer orderer, Geophylogeny geophylogeny,
+			CompactTree tree) {
+		this.orderer = orderer;
+		this.geophylogeny = geophylogeny;
+		this.tree = tree;
+		this.leaderType = geophylogeny.getLeaderType();
+
+		int numTaxa = tree.getNumberOfLeaves();
+		slotOfLeaf = new int[numTaxa];
+		leafX = new double[numTaxa];
+		siteX = new double[numTaxa];
+		siteY = new double[numTaxa];
+		byLeaf = new int[numTaxa];
+		if (leaderType == GeophylogenyLeaderType.PO) {
+			byHeight = new int[numTaxa];
+			sortBuffer = new int[numTaxa];
+		}
+		stackVertex = new int[numTaxa + 1];
+		stackPosition = new int[numTaxa + 1];
+	}
+
+	/**
+	 * Prepares the slots for the leaders of the two children of the given
+	 * parent; has to be called before the combination costs for this parent
+	 * are computed. Does nothing if the parent is already prepared.
+	 *
+	 * @param parent
+	 *            inner vertex whose children are combined next
+	 */
+	void prepare(int parent) {
+		if (this.parent == parent) {
+			return;
+		}
+		this.parent = parent;
+
+		numSlots = 0;
+		addSlots(tree.getFirstChild(parent));
+		numFirstSlots = numSlots;
+		addSlots(tree.getSecondChild(parent));
+
+		if (leaderType == GeophylogenyLeaderType.PO) {
+			LeaderCrossingCounter.sortIndices(siteY, numSlots, byHeight, sortBuffer);
+		}
+	}
+
+	private void addSlots(int child) {
+		Site[] sites = geophylogeny.getSites();
+		// the clade is an interval of the canonical leaf order
+		int start = tree.getCladeStart(child);
+		for (int i = start; i < start + tree.getCladeSize(child); i++) {
+			int leaf = tree.getLeafInCanonicalOrder(i);
+			Site site = sites[leaf];
+			slotOfLeaf[leaf] = numSlots;
+			siteX[numSlots] = site.getX();
+			siteY[numSlots] = site.getY();
+			numSlots++;
+		}
+	}
+
+	/**
+	 * Computes the number of crossings between the leaders of the left and the
+	 * right vertex if the left vertex has its leftmost leaf at the given
+	 * position and the right vertex is placed directly to its right, both in
+	 * the order recovered from the dynamic program. The two vertices have to be
+	 * the children of the last prepared parent.
+	 *
+	 * @param leftVertex
+	 *            child placed to the left
+	 * @param rightVertex
+	 *            child placed to the right
+	 * @param position
+	 *            position of the leftmost leaf of the left vertex
+	 * @return the number of crossings between the leaders of the two children
+	 */
+	int computeCombinationCosts(int leftVertex, int rightVertex, int position) {
+		recoverLayout(leftVertex, position, position);
+		recoverLayout(rightVertex, position + tree.getCladeSize(leftVertex), position);
+
+		return switch (leaderType) {
+		case S -> LeaderCrossingCounter.countSLeaderCrossingsBetween(leafX, siteX, siteY,
+				numFirstSlots, numSlots, byLeaf);
+		case PO -> LeaderCrossingCounter.countPOLeaderCrossingsBetween(leafX, siteX, siteY,
+				numFirstSlots, numSlots, byLeaf, byHeight);
+		default -> 0;
+		};
+	}
+
+	/**
+	 * Assigns the positions of the layout of the given vertex at the given
+	 * position to the slots of its leaves, without changing the tree.
+	 */
+	private void recoverLayout(int vertex, int position, int basePosition) {
+		int size = 0;
+		stackVertex[size] = vertex;
+		stackPosition[size] = position;
+		size++;
+
+		while (size > 0) {
+			size--;
+			int current = stackVertex[size];
+			int currentPosition = stackPosition[size];
+
+			if (tree.isLeaf(current)) {
+				int slot = slotOfLeaf[current];
+				leafX[slot] = geophylogeny.getXByPosition(currentPosition);
+				byLeaf[currentPosition - basePosition] = slot;
+				continue;
+			}
+
+			int left = tree.getFirstChild(current);
+			int right = tree.getSecondChild(current);
+			if (!orderer.isFirstChildLeftAt(current, currentPosition)) {
+				left = tree.getSecondChild(current);
+				right = tree.getFirstChild(current);
+			}
+			// right child below left child, so that the left one is handled first
+			stackVertex[size] = right;
+			stackPosition[size] = currentPosition + tree.getCladeSize(left);
+			size++;
+			stackVertex[size] = left;
+			stackPosition[size] = currentPosition;
+			size++;
+		}
+	}
+}
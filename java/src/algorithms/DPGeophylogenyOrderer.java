@@ -1,11 +1,10 @@
 package algorithms;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 
-import model.Vertex;
+import model.Embedding;
 import model.Geophylogeny;
-import model.Leader;
 import model.Site;
 
 /**
@@ -20,34 +19,53 @@ import model.Site;
 public class DPGeophylogenyOrderer extends GeophylogenyOrderer {
 
 	/**
-	 * Storage of values computed by dynamic program. First entry species the
-	 * vertex v; second entry the position of the leftmost leaf of tree rooted
-	 * at v.
+	 * Storage of values computed by dynamic program for the inner vertices,
+	 * together with whether the first child was set as left child. Values of
+	 * leaves are computed when needed.
 	 */
-	private double[][] valueOfVertexAtPosition;
-
-	/**
-	 * Store for vertex v at position p whether it would have set left child as
-	 * first child.
-	 */
-	private boolean[][] firstAsLeftOfVertexAtPosition;
+	protected DPTable table;
 
 	private int[] sitePositionInHorizontalOrder;
 
-	private DPStrategy strategy;
+	/** Coordinates of the site of each leaf by index. */
+	private double[] siteXOfLeaf;
+	private double[] siteYOfLeaf;
+
+	protected DPStrategy strategy;
+
+	/** Counts crossings between two subtrees (Crossings strategy). */
+	private CombinationCostEngine combinationCostEngine;
 
 	public DPGeophylogenyOrderer(Geophylogeny geophylogeny, DPStrategy strategy) {
+		this(geophylogeny, strategy, DPMode.Dense);
+	}
+
+	public DPGeophylogenyOrderer(Geophylogeny geophylogeny, DPStrategy strategy, DPMode mode) {
 		super(geophylogeny);
-		valueOfVertexAtPosition = new double[this.numVertices][this.numTaxa];
-		firstAsLeftOfVertexAtPosition = new boolean[this.numVertices][this.numTaxa];
+		this.table = switch (mode) {
+		case Dense -> new DenseDPTable(this.compactTree);
+		case Sparse -> new SparseDPTable(this.compactTree);
+		case LowMemory -> new LowMemoryDPTable(this.compactTree);
+		};
 
 		this.strategy = strategy;
 
+		siteXOfLeaf = new double[numTaxa];
+		siteYOfLeaf = new double[numTaxa];
+		Site[] sites = geophylogeny.getSites();
+		for (int leaf = 0; leaf < numTaxa; leaf++) {
+			siteXOfLeaf[leaf] = sites[leaf].getX();
+			siteYOfLeaf[leaf] = sites[leaf].getY();
+		}
+
+		if (this.strategy == DPStrategy.Crossings) {
+			combinationCostEngine = new CombinationCostEngine(this, geophylogeny, compactTree);
+		}
+
 		if (this.strategy == DPStrategy.Hops) {
 			int n = this.geophylogeny.getTree().getNumberOfLeaves();
 			sitePositionInHorizontalOrder = new int[n];
 
-			Site[] sites = this.geophylogeny.getSites();
 			Site[] siteCopies = new Site[n];
 			for (int i = 0; i < siteCopies.length; i++) {
 				siteCopies[i] = sites[i];
@@ -61,114 +79,171 @@ public class DPGeophylogenyOrderer extends GeophylogenyOrderer {
 	}
 
 	@Override
-	public void orderLeaves() {
-		// initialize leaves
-		for (Vertex leaf : this.tree.getLeavesInIndexOrder()) {
-			for (int position = 0; position < numTaxa; position++) {
-				Site site = this.geophylogeny.getSiteOfLeaf(leaf);
-				valueOfVertexAtPosition[leaf.getIndex()][position] = switch (strategy) {
+	public Embedding computeEmbedding() {
+		// compute values for inner vertices
+		for (int parent : table.getProcessingOrder()) {
+			table.startVertex(parent);
+			computeValues(parent, 0, table.getNumberOfPositions(parent), combinationCostEngine);
+			table.finishVertex(parent);
+		}
 
-				case EuclideanDistance -> {
-					double positionX = this.geophylogeny.getXByPosition(position);
-					double xDiff = positionX - site.getX();
-					yield Math.sqrt(xDiff * xDiff + site.getY() * site.getY());
-				}
+		// recover order according to result
+		return recoverEmbedding();
+	}
 
-				case HorizontalDistance -> Math
-						.abs(this.geophylogeny.getXByPosition(position) - site.getX());
+	/**
+	 * Computes the values of the given inner vertex for its positions with
+	 * index from (inclusive) to to (exclusive); the values of the children of
+	 * the vertex have to be computed already.
+	 *
+	 * @param parent
+	 *            inner vertex whose values are computed
+	 * @param from
+	 *            index of the first position
+	 * @param to
+	 *            index after the last position
+	 * @param engine
+	 *            engine for the combination costs (Crossings strategy)
+	 */
+	void computeValues(int parent, int from, int to, CombinationCostEngine engine) {
+		int firstChild = compactTree.getFirstChild(parent);
+		int secondChild = compactTree.getSecondChild(parent);
+		int firstCladeSize = compactTree.getCladeSize(firstChild);
+		int secondCladeSize = compactTree.getCladeSize(secondChild);
+
+		if (strategy == DPStrategy.Crossings) {
+			engine.prepare(parent);
+		}
 
-				case Hops -> Math
-						.abs(position - sitePositionInHorizontalOrder[site.getLeaf().getIndex()]);
+		for (int k = from; k < to; k++) {
+			int position = table.getPosition(parent, k);
 
-				case Crossings -> 0;
+			double firstChildLeft = getValue(firstChild, position)
+					+ getValue(secondChild, position + firstCladeSize);
+			double secondChildLeft = getValue(secondChild, position)
+					+ getValue(firstChild, position + secondCladeSize);
 
-				default -> Double.MAX_VALUE;
-				};
+			if (strategy == DPStrategy.Crossings) {
+				firstChildLeft += engine.computeCombinationCosts(firstChild, secondChild,
+						position);
+				secondChildLeft += engine.computeCombinationCosts(secondChild, firstChild,
+						position);
 			}
-		}
-
-		// compute values for inner vertices
-		for (Vertex parent : this.tree.getInnnerVertices()) {
-			Vertex firstChild = parent.getFirstChild();
-			Vertex secondChild = parent.getSecondChild();
-
-
-			for (int position = 0; position < numTaxa; position++) {
-				if (position + parent.getCladeSize() > numTaxa) {
-					valueOfVertexAtPosition[parent.getIndex()][position] = Double.POSITIVE_INFINITY;
-					continue;
-				}
-
-				double firstChildLeft = valueOfVertexAtPosition[firstChild.getIndex()][position]
-						+ valueOfVertexAtPosition[secondChild.getIndex()][position
-								+ firstChild.getCladeSize()];
-				double secondChildLeft = valueOfVertexAtPosition[secondChild.getIndex()][position]
-						+ valueOfVertexAtPosition[firstChild.getIndex()][position
-								+ secondChild.getCladeSize()];
-				
-				if (strategy == DPStrategy.Crossings) {
-					firstChildLeft += computeCombinationCosts(firstChild, secondChild, position);
-					secondChildLeft += computeCombinationCosts(secondChild, firstChild, position);
-				}
-
-				firstAsLeftOfVertexAtPosition[parent
-						.getIndex()][position] = (firstChildLeft <= secondChildLeft);
-				valueOfVertexAtPosition[parent.getIndex()][position] = Math.min(firstChildLeft,
-						secondChildLeft);
 
-			}
+			table.set(parent, k, Math.min(firstChildLeft, secondChildLeft),
+					firstChildLeft <= secondChildLeft);
 		}
+	}
 
-		// recover and set order according to result
-		recoverOrder(this.tree.getRoot(), 0);
+	/**
+	 * Returns the number of (vertex, position) states of the dynamic program,
+	 * which determines its memory usage.
+	 *
+	 * @return the number of states of the dynamic program
+	 */
+	public long getNumberOfStates() {
+		return table.getNumberOfStates();
 	}
 
-	private double computeCombinationCosts(Vertex leftVertex, Vertex rightVertex, int position) {
-		recoverOrder(leftVertex, position);
-		recoverOrder(rightVertex, position + leftVertex.getCladeSize());
-		
-		ArrayList<Leader> leftLeaders = new ArrayList<Leader>(leftVertex.getCladeSize());
-		for (Vertex leaf : leftVertex.getClade()) {
-			leftLeaders.add(new Leader(leaf, geophylogeny.getSiteOfLeaf(leaf), geophylogeny.getLeaderType()));
-		}
-		
-		ArrayList<Leader> rightLeaders = new ArrayList<Leader>(leftVertex.getCladeSize());
-		for (Vertex leaf : rightVertex.getClade()) {
-			rightLeaders.add(new Leader(leaf, geophylogeny.getSiteOfLeaf(leaf), geophylogeny.getLeaderType()));
-		}
-		
-		int numCrossings = 0;
-		for (Leader leftLeader : leftLeaders) {
-			for (Leader rightLeader : rightLeaders) {
-				numCrossings += leftLeader.crossesLeader(rightLeader) ? 1 : 0;
-			}
+	/**
+	 * Returns an estimate of the maximum number of bytes that were used by the
+	 * values and choices of the dynamic program at the same time.
+	 *
+	 * @return peak memory of the dynamic program in bytes
+	 */
+	public long getPeakMemoryInBytes() {
+		return table.getPeakMemoryInBytes();
+	}
+
+	private double getValue(int vertex, int position) {
+		if (compactTree.isLeaf(vertex)) {
+			return computeLeafValue(vertex, position);
 		}
-		
-		return numCrossings;
+		return table.getValue(vertex, position);
 	}
 
-	private void recoverOrder(Vertex parent, int position) {
-		if (parent.isLeaf()) {
-			parent.setX(geophylogeny.getXByPosition(position));
-			return;
+	private double computeLeafValue(int leaf, int position) {
+		return switch (strategy) {
+
+		case EuclideanDistance -> {
+			double positionX = this.geophylogeny.getXByPosition(position);
+			double xDiff = positionX - siteXOfLeaf[leaf];
+			yield Math.sqrt(xDiff * xDiff + siteYOfLeaf[leaf] * siteYOfLeaf[leaf]);
 		}
-		
-		Vertex firstChild = parent.getFirstChild();
-		Vertex secondChild = parent.getSecondChild();
-
-		if (firstAsLeftOfVertexAtPosition[parent.getIndex()][position]) {
-			parent.setAsLeftChild(firstChild);
-			recoverOrder(firstChild, position);
-			recoverOrder(secondChild, position + firstChild.getCladeSize());
-		} else {
-			parent.setAsLeftChild(secondChild);
-			recoverOrder(secondChild, position);
-			recoverOrder(firstChild, position + secondChild.getCladeSize());
+
+		case HorizontalDistance -> Math
+				.abs(this.geophylogeny.getXByPosition(position) - siteXOfLeaf[leaf]);
+
+		case Hops -> Math.abs(position - sitePositionInHorizontalOrder[leaf]);
+
+		case Crossings -> 0;
+
+		default -> Double.MAX_VALUE;
+		};
+	}
+
+	/**
+	 * Returns whether the dynamic program places the first child of the given
+	 * vertex to the left if the vertex has its leftmost leaf at the given
+	 * position.
+	 */
+	boolean isFirstChildLeftAt(int vertex, int position) {
+		return table.isFirstAsLeft(vertex, position);
+	}
+
+	/**
+	 * Follows the choices of the dynamic program from the root at position 0
+	 * down to the leaves.
+	 */
+	protected Embedding recoverEmbedding() {
+		BitSet secondChildLeft = new BitSet(numVertices);
+		int[] positionOfLeaf = new int[numTaxa];
+
+		int[] stack = new int[numVertices];
+		int[] stackPosition = new int[numVertices];
+		int size = 0;
+		stack[size] = compactTree.getRoot();
+		stackPosition[size] = 0;
+		size++;
+		while (size > 0) {
+			size--;
+			int parent = stack[size];
+			int position = stackPosition[size];
+			if (compactTree.isLeaf(parent)) {
+				positionOfLeaf[parent] = position;
+				continue;
+			}
+
+			int left = compactTree.getFirstChild(parent);
+			int right = compactTree.getSecondChild(parent);
+			if (!table.isFirstAsLeft(parent, position)) {
+				secondChildLeft.set(parent);
+				left = compactTree.getSecondChild(parent);
+				right = compactTree.getFirstChild(parent);
+			}
+			stack[size] = right;
+			stackPosition[size] = position + compactTree.getCladeSize(left);
+			size++;
+			stack[size] = left;
+			stackPosition[size] = position;
+			size++;
 		}
+
+		return new Embedding(secondChildLeft, positionOfLeaf);
 	}
 
 	public enum DPStrategy {
 		EuclideanDistance, HorizontalDistance, Hops, Crossings;
 	}
 
+	/**
+	 * How the values of the dynamic program are stored: Dense stores a value
+	 * for every inner vertex and every position in O(n^2) memory, Sparse only
+	 * for the positions a vertex can actually be placed at, and LowMemory only
+	 * keeps the values of O(log n) vertices alive and the choices as bitsets.
+	 */
+	public enum DPMode {
+		Dense, Sparse, LowMemory;
+	}
+
 }
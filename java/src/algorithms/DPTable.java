@@ -0,0 +1,113 @@
+package algorithms;
+
+import model.CompactTree;
+
+/**
+ * This abstract class describes the storage of the values and choices of the
+ * {@link DPGeophylogenyOrderer} for the inner vertices of a tree. For each
+ * inner vertex v, the table has a number of positions at which the leftmost
+ * leaf of v can be placed; for the k-th of these positions it stores the value
+ * of the subtree rooted at v and whether the first child of v is placed to the
+ * left.
+ *
+ * Vertices are given by their index in the {@link CompactTree} of the tree.
+ */
+abstract class DPTable {
+
+	protected CompactTree tree;
+
+	/** Number of leaves, and so the index of the first inner vertex. */
+	protected int numTaxa;
+
+	protected DPTable(CompactTree tree) {
+		this.tree = tree;
+		this.numTaxa = tree.getNumberOfLeaves();
+	}
+
+	/**
+	 * Returns for how many positions values of the given inner vertex are
+	 * stored.
+	 *
+	 * @param vertex
+	 *            inner vertex
+	 * @return number of positions of the given inner vertex
+	 */
+	abstract int getNumberOfPositions(int vertex);
+
+	/**
+	 * Returns the k-th position of the given inner vertex, where the positions
+	 * are sorted increasingly.
+	 *
+	 * @param vertex
+	 *            inner vertex
+	 * @param k
+	 *            index of the position, between 0 and
+	 *            {@link #getNumberOfPositions(int)} - 1
+	 * @return the k-th position of the given inner vertex
+	 */
+	abstract int getPosition(int vertex, int k);
+
+	abstract double getValue(int vertex, int position);
+
+	abstract boolean isFirstAsLeft(int vertex, int position);
+
+	/**
+	 * Stores the value and the choice of the given inner vertex at its k-th
+	 * position.
+	 *
+	 * @param vertex
+	 *            inner vertex
+	 * @param k
+	 *            index of the position
+	 * @param value
+	 *            value of the subtree rooted at the vertex
+	 * @param firstAsLeft
+	 *            whether the first child of the vertex is placed to the left
+	 */
+	abstract void set(int vertex, int k, double value, boolean firstAsLeft);
+
+	/**
+	 * Returns the number of (vertex, position) states this table has room for.
+	 *
+	 * @return the number of states of this table
+	 */
+	abstract long getNumberOfStates();
+
+	/**
+	 * Returns an estimate of the maximum number of bytes used by the values
+	 * and choices of this table at any point so far.
+	 *
+	 * @return peak memory of this table in bytes
+	 */
+	abstract long getPeakMemoryInBytes();
+
+	/**
+	 * Returns the inner vertices of the tree in the order in which their
+	 * values should be computed, where children come before their parents.
+	 *
+	 * @return the inner vertices of the tree in processing order
+	 */
+	int[] getProcessingOrder() {
+		// children have smaller indices than their parents
+		int[] order = new int[numTaxa - 1];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = numTaxa + i;
+		}
+		return order;
+	}
+
+	/** Called before the values of the given inner vertex are set. */
+	void startVertex(int vertex) {
+	}
+
+	/**
+	 * Called after all values of the given inner vertex are set; the values of
+	 * its children are not needed anymore.
+	 */
+	void finishVertex(int vertex) {
+	}
+
+	protected int getRow(int vertex) {
+		return vertex - numTaxa;
+	}
+}
@@ -0,0 +1,58 @@
+package algorithms;
+
+import model.CompactTree;
+
+/**
+ * This class implements a {@link DPTable} with a row for every inner vertex
+ * and a column for every position, even though the subtree of a vertex cannot
+ * be placed at all positions. This takes O(n^2) memory for n leaves, but has
+ * constant time access.
+ */
+class DenseDPTable extends DPTable {
+
+	private double[][] valueOfVertexAtPosition;
+	private boolean[][] firstAsLeftOfVertexAtPosition;
+
+	DenseDPTable(CompactTree tree) {
+		super(tree);
+		valueOfVertexAtPosition = new double[numTaxa - 1][numTaxa];
+		firstAsLeftOfVertexAtPosition = new boolean[numTaxa - 1][numTaxa];
+	}
+
+	@Override
+	int getNumberOfPositions(int vertex) {
+		return numTaxa - tree.getCladeSize(vertex) + 1;
+	}
+
+	@Override
+	int getPosition(int vertex, int k) {
+		return k;
+	}
+
+	@Override
+	double getValue(int vertex, int position) {
+		return valueOfVertexAtPosition[getRow(vertex)][position];
+	}
+
+	@Override
+	boolean isFirstAsLeft(int vertex, int position) {
+		return firstAsLeftOfVertexAtPosition[getRow(vertex)][position];
+	}
+
+	@Override
+	void set(int vertex, int k, double value, boolean firstAsLeft) {
+		valueOfVertexAtPosition[getRow(vertex)][k] = value;
+		firstAsLeftOfVertexAtPosition[getRow(vertex)][k] = firstAsLeft;
+	}
+
+	@Override
+	long getNumberOfStates() {
+		return ((long) numTaxa - 1) * numTaxa;
+	}
+
+	@Override
+	long getPeakMemoryInBytes() {
+		// one double and one boolean per state
+		return 9 * getNumberOfStates();
+	}
+}
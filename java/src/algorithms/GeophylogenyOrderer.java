@@ -1,5 +1,7 @@
 package algorithms;
 
+import model.CompactTree;
+import model.Embedding;
 import model.Tree;
 import model.Geophylogeny;
 
@@ -13,6 +15,8 @@ public abstract class GeophylogenyOrderer {
 
 	protected Geophylogeny geophylogeny;
 	protected Tree tree;
+	/** Flat copy of the topology of the tree for the traversals of orderers. */
+	protected CompactTree compactTree;
 	protected int numTaxa;
 	protected int numVertices;
 
@@ -20,10 +24,26 @@ public abstract class GeophylogenyOrderer {
 		super();
 		this.geophylogeny = geophylogeny;
 		this.tree = geophylogeny.getTree();
+		this.compactTree = CompactTree.fromTree(tree);
 		this.numTaxa = tree.getNumberOfLeaves();
 		this.numVertices = tree.getNumberOfVertices();
 	}
 
-	public abstract void orderLeaves();
+	/**
+	 * Computes a leaf order for the geophylogeny of this orderer without
+	 * changing the geophylogeny, such that several orderers can run on the
+	 * same geophylogeny at the same time.
+	 * 
+	 * @return the computed embedding
+	 */
+	public abstract Embedding computeEmbedding();
+
+	/**
+	 * Computes a leaf order and sets it as embedding of the tree of the
+	 * geophylogeny of this orderer.
+	 */
+	public void orderLeaves() {
+		computeEmbedding().applyTo(geophylogeny);
+	}
 
 }
@@ -3,6 +3,7 @@ package algorithms;
 import java.util.Random;
 
 import model.Vertex;
+import model.Embedding;
 import model.Geophylogeny;
 
 /**
@@ -18,49 +19,61 @@ public class GreedyGeophylogenyOrderOptimizer extends GeophylogenyOrderer {
 	}
 
 	/**
-	 * Optimizes the order of this optimizers geophylogeny as long as it finds
-	 * improvements.
+	 * Optimizes the current order of this optimizers geophylogeny as long as it
+	 * finds improvements, without changing the geophylogeny.
 	 */
 	@Override
-	public void orderLeaves() {
+	public Embedding computeEmbedding() {
+		return computeEmbedding(Embedding.fromTree(tree));
+	}
+
+	/**
+	 * Optimizes the given embedding as long as it finds improvements, without
+	 * changing the geophylogeny.
+	 * 
+	 * @param start
+	 *            embedding to start with
+	 * @return the optimized embedding
+	 */
+	public Embedding computeEmbedding(Embedding start) {
 		int[] vertexTestOrder = createRandomVertexTestOrder();
+		IncrementalCrossingEvaluator evaluator = new IncrementalCrossingEvaluator(geophylogeny,
+				start);
 
 		int improvement;
 		int totalImprovement = 0;
 		do {
 			improvement = 0;
-			improvement = optimizeOneRound(vertexTestOrder);
+			improvement = optimizeOneRound(vertexTestOrder, evaluator);
 			totalImprovement += improvement;
 		} while (improvement > 0);
 
 		// System.out.println("total improvement: " + totalImprovement); # the "+": how much can a greedy hill climbing improve?
+		return evaluator.getEmbedding();
 	}
 
 	/**
 	 * Optimize the leaf order for one round (each vertex once) in a random
-	 * order.
+	 * order and sets the result as embedding of the geophylogeny.
 	 * 
 	 * @return the number of crossings saved
 	 */
 	public int optimizeOneRound() {
-		return optimizeOneRound(createRandomVertexTestOrder());
+		IncrementalCrossingEvaluator evaluator = new IncrementalCrossingEvaluator(geophylogeny);
+		int improvement = optimizeOneRound(createRandomVertexTestOrder(), evaluator);
+		evaluator.getEmbedding().applyTo(geophylogeny);
+		return improvement;
 	}
 
-	private int optimizeOneRound(int[] vertexTestOrder) {
+	private int optimizeOneRound(int[] vertexTestOrder, IncrementalCrossingEvaluator evaluator) {
 		Vertex[] vertices = tree.getInnnerVertices();
-		int currentNumberOfCrossings = geophylogeny.computeNumberOfCrossings();
 		int improvement = 0;
 		for (int i = 0; i < vertexTestOrder.length; i++) {
 			Vertex vertex = vertices[vertexTestOrder[i]];
-			vertex.rotate();
-			this.geophylogeny.computeXCoordinates();
-			int rotatedNumberOfCrossings = geophylogeny.computeNumberOfCrossings();
-			if (rotatedNumberOfCrossings < currentNumberOfCrossings) {
-				improvement += (currentNumberOfCrossings - rotatedNumberOfCrossings);
-				currentNumberOfCrossings = rotatedNumberOfCrossings;
-			} else {
-				vertex.rotate();
-				this.geophylogeny.computeXCoordinates();
+			int delta = evaluator.computeRotationDelta(vertex);
+			if (delta < 0) {
+				evaluator.rotate(vertex, delta);
+				improvement -= delta;
 			}
 		}
 		return improvement;
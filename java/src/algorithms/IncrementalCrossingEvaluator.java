@@ -0,0 +1,281 @@
+package algorithms;
+
+import java.util.Arrays;
+
+import model.CompactTree;
+import model.Embedding;
+import model.Geophylogeny;
+import model.LeaderCrossingCounter;
+import model.LeaderKernel;
+import model.Leader.GeophylogenyLeaderType;
+import model.Site;
+import model.Vertex;
+
+/**
+ * This class keeps track of the leaders of a drawing of a geophylogeny and
+ * computes how the number of leader crossings changes when an inner vertex is
+ * rotated, without recomputing the whole drawing.
+ *
+ * Rotating a vertex v swaps the two blocks of leaves of its children and
+ * leaves every other leaf at its position. The change in crossings thus only
+ * depends on the pairs of leaders with at least one leader in the clade of v,
+ * which can be tested in O(c n) time for a clade of size c. For large clades,
+ * recounting all crossings with a {@link LeaderCrossingCounter} is cheaper and
+ * used instead.
+ *
+ * The start of the clade of each vertex in the current leaf order is kept
+ * and, like the leaves, updated in O(c) time by a rotation, so that neither
+ * testing nor applying a rotation depends on the depth of the vertex.
+ *
+ * The evaluator keeps its own copy of the embedding and never changes the
+ * geophylogeny, such that several evaluators can work on the same
+ * geophylogeny at the same time.
+ */
+public class IncrementalCrossingEvaluator {
+
+	private GeophylogenyLeaderType leaderType;
+	private int numTaxa;
+
+	/** Topology of the tree with the current embedding of this evaluator. */
+	private CompactTree compactTree;
+
+	/** Leaders of the leaves by position in the current leaf order. */
+	private double[] leafX;
+	private double[] siteX;
+	private double[] siteY;
+
+	/**
+	 * Position of the leftmost leaf of the clade of each vertex in the current
+	 * leaf order, by vertex index; for a leaf, this is its position.
+	 */
+	private int[] cladeStart;
+
+	/** Buffer for the traversal of a subtree whose clade starts shift. */
+	private int[] subtreeStack;
+
+	/** The x-coordinate of a leaf at the respective position. */
+	private double[] xByPosition;
+
+	private int numberOfCrossings;
+
+	/**
+	 * Leaf x-coordinates by position of a rotated drawing; equal to leafX
+	 * except while a rotation is tested.
+	 */
+	private double[] rotatedLeafX;
+
+	/**
+	 * Creates an evaluator for the current leaf order of the given
+	 * geophylogeny.
+	 *
+	 * @param geophylogeny
+	 *            geophylogeny whose leaf order is evaluated
+	 */
+	public IncrementalCrossingEvaluator(Geophylogeny geophylogeny) {
+		this(geophylogeny, Embedding.fromTree(geophylogeny.getTree()));
+	}
+
+	/**
+	 * Creates an evaluator for the given embedding of the tree of the given
+	 * geophylogeny.
+	 *
+	 * @param geophylogeny
+	 *            geophylogeny whose leaf orders are evaluated
+	 * @param embedding
+	 *            embedding to start with
+	 */
+	public IncrementalCrossingEvaluator(Geophylogeny geophylogeny, Embedding embedding) {
+		this.leaderType = geophylogeny.getLeaderType();
+		this.numTaxa = geophylogeny.getTree().getNumberOfLeaves();
+
+		compactTree = CompactTree.fromTree(geophylogeny.getTree());
+		compactTree.setEmbedding(embedding);
+		Vertex[] leafAtPosition = embedding.getLeavesInOrder(geophylogeny.getTree());
+		leafX = new double[numTaxa];
+		siteX = new double[numTaxa];
+		siteY = new double[numTaxa];
+		cladeStart = new int[compactTree.getNumberOfVertices()];
+		subtreeStack = new int[compactTree.getNumberOfVertices()];
+		xByPosition = new double[numTaxa];
+		for (int position = 0; position < numTaxa; position++) {
+			Vertex leaf = leafAtPosition[position];
+			Site site = geophylogeny.getSiteOfLeaf(leaf);
+			xByPosition[position] = geophylogeny.getXByPosition(position);
+			leafX[position] = xByPosition[position];
+			siteX[position] = site.getX();
+			siteY[position] = site.getY();
+			cladeStart[leaf.getIndex()] = position;
+		}
+		rotatedLeafX = leafX.clone();
+		for (int vertex : compactTree.getPostOrder()) {
+			if (!compactTree.isLeaf(vertex)) {
+				cladeStart[vertex] = Math.min(cladeStart[compactTree.getFirstChild(vertex)],
+						cladeStart[compactTree.getSecondChild(vertex)]);
+			}
+		}
+
+		numberOfCrossings = countCrossings(leafX);
+	}
+
+	/**
+	 * Returns the number of leader crossings of the current leaf order.
+	 *
+	 * @return the number of leader crossings of the current leaf order
+	 */
+	public int getNumberOfCrossings() {
+		return numberOfCrossings;
+	}
+
+	/**
+	 * Returns the current embedding of this evaluator.
+	 *
+	 * @return the current embedding
+	 */
+	public Embedding getEmbedding() {
+		return new Embedding(compactTree.getSecondChildLeft(), Arrays.copyOf(cladeStart, numTaxa));
+	}
+
+	/**
+	 * Computes by how much the number of leader crossings would change if the
+	 * given vertex was rotated; the drawing itself is not changed.
+	 *
+	 * @param vertex
+	 *            inner vertex to test
+	 * @return number of crossings after rotating minus number of crossings
+	 *         before rotating the given vertex
+	 */
+	public int computeRotationDelta(Vertex vertex) {
+		if ((leaderType != GeophylogenyLeaderType.S) && (leaderType != GeophylogenyLeaderType.PO)) {
+			return 0;
+		}
+
+		int start = cladeStart[vertex.getIndex()];
+		int end = start + vertex.getCladeSize();
+		int leftSize = compactTree.getCladeSize(compactTree.getLeftChild(vertex.getIndex()));
+		int rightSize = compactTree.getCladeSize(compactTree.getRightChild(vertex.getIndex()));
+
+		if (2L * vertex.getCladeSize() * numTaxa > estimateRecountCost()) {
+			// only the clade changes; it is restored after counting
+			for (int position = start; position < end; position++) {
+				rotatedLeafX[position] = xByPosition[getRotatedPosition(position, start,
+						leftSize, rightSize)];
+			}
+			int rotatedCrossings = countCrossings(rotatedLeafX);
+			System.arraycopy(leafX, start, rotatedLeafX, start, end - start);
+			return rotatedCrossings - numberOfCrossings;
+		}
+
+		int delta = 0;
+		for (int i = start; i < end; i++) {
+			double oldX = leafX[i];
+			double newX = xByPosition[getRotatedPosition(i, start, leftSize, rightSize)];
+
+			// pairs with a leader outside of the clade
+			for (int j = 0; j < start; j++) {
+				delta += crossesAsInt(newX, i, leafX[j], j) - crossesAsInt(oldX, i, leafX[j], j);
+			}
+			for (int j = end; j < numTaxa; j++) {
+				delta += crossesAsInt(newX, i, leafX[j], j) - crossesAsInt(oldX, i, leafX[j], j);
+			}
+
+			// pairs within the clade
+			for (int j = i + 1; j < end; j++) {
+				double newOtherX = xByPosition[getRotatedPosition(j, start, leftSize, rightSize)];
+				delta += crossesAsInt(newX, i, newOtherX, j) - crossesAsInt(oldX, i, leafX[j], j);
+			}
+		}
+
+		return delta;
+	}
+
+	/**
+	 * Rotates the given vertex in the embedding of this evaluator and updates
+	 * the leaf order and the number of crossings accordingly; the tree itself
+	 * is not changed.
+	 *
+	 * @param vertex
+	 *            inner vertex to rotate
+	 * @param delta
+	 *            change in crossings as computed by
+	 *            {@link #computeRotationDelta(Vertex)}
+	 */
+	public void rotate(Vertex vertex, int delta) {
+		int start = cladeStart[vertex.getIndex()];
+		int end = start + vertex.getCladeSize();
+		int left = compactTree.getLeftChild(vertex.getIndex());
+		int right = compactTree.getRightChild(vertex.getIndex());
+		int leftSize = compactTree.getCladeSize(left);
+
+		// the blocks of the two children swap places, by three reversals
+		reverse(start, end);
+		reverse(start, end - leftSize);
+		reverse(end - leftSize, end);
+		shiftClades(left, end - leftSize - start);
+		shiftClades(right, -leftSize);
+
+		compactTree.rotate(vertex.getIndex());
+		numberOfCrossings += delta;
+	}
+
+	/** Reverses the sites at the positions from start to end - 1. */
+	private void reverse(int start, int end) {
+		for (int i = start, j = end - 1; i < j; i++, j--) {
+			double x = siteX[i];
+			siteX[i] = siteX[j];
+			siteX[j] = x;
+			double y = siteY[i];
+			siteY[i] = siteY[j];
+			siteY[j] = y;
+		}
+	}
+
+	/** Adds the given shift to the clade start of each vertex of the subtree. */
+	private void shiftClades(int subtreeRoot, int shift) {
+		int size = 0;
+		subtreeStack[size++] = subtreeRoot;
+		while (size > 0) {
+			int vertex = subtreeStack[--size];
+			cladeStart[vertex] += shift;
+			if (!compactTree.isLeaf(vertex)) {
+				subtreeStack[size++] = compactTree.getFirstChild(vertex);
+				subtreeStack[size++] = compactTree.getSecondChild(vertex);
+			}
+		}
+	}
+
+	private static int getRotatedPosition(int position, int start, int leftSize, int rightSize) {
+		return (position < start + leftSize) ? position + rightSize : position - leftSize;
+	}
+
+	/**
+	 * Estimates the cost of recounting all crossings in terms of the number of
+	 * pairs of leaders that could be tested directly in the same time.
+	 */
+	private long estimateRecountCost() {
+		long n = numTaxa;
+		if (leaderType == GeophylogenyLeaderType.PO) {
+			long log = 64 - Long.numberOfLeadingZeros(n);
+			return 4 * n * log;
+		}
+		if (numberOfCrossings <= n * n / 512) {
+			// sweep, where a swap costs about as much as 64 pairs
+			return 64 * (n + numberOfCrossings);
+		}
+		// pairwise fallback after an aborted sweep
+		return n * n / 2 + n * n / 8;
+	}
+
+	private int countCrossings(double[] leafXs) {
+		if (leaderType == GeophylogenyLeaderType.S) {
+			return LeaderCrossingCounter.countSLeaderCrossings(leafXs, siteX, siteY, numTaxa);
+		} else if (leaderType == GeophylogenyLeaderType.PO) {
+			return LeaderCrossingCounter.countPOLeaderCrossings(leafXs, siteX, siteY, numTaxa);
+		}
+		return 0;
+	}
+
+	private int crossesAsInt(double x, int i, double otherX, int j) {
+		return LeaderKernel.leadersCross(leaderType, x, siteX[i], siteY[i], otherX, siteX[j],
+				siteY[j]) ? 1 : 0;
+	}
+}
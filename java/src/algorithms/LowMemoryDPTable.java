@@ -0,0 +1,156 @@
+package algorithms;
+
+import java.util.ArrayDeque;
+
+import model.CompactTree;
+
+/**
+ * This class implements a {@link DPTable} that only keeps the values of an
+ * inner vertex until the values of its parent are computed; only the choices
+ * are kept for all vertices, since they are needed to recover the order. The
+ * choices of a vertex are packed into a bitset with one bit per position.
+ *
+ * Value rows are taken from a pool and returned to it once they are dead. The
+ * vertices are processed in post-order with the child with the larger clade
+ * first, such that only O(log n) value rows are alive at any time. The
+ * memory of the table is thus dominated by the choices with n^2 / 8 bytes for
+ * n leaves, compared to 9 n^2 bytes for a {@link DenseDPTable}.
+ */
+class LowMemoryDPTable extends DPTable {
+
+	/** Values of each inner vertex by row, or null if not alive. */
+	private double[][] valuesOfVertex;
+
+	/** Choices of each inner vertex by row as bitset over the positions. */
+	private long[][] firstAsLeftOfVertex;
+
+	/** Unused value rows, each with room for all positions. */
+	private ArrayDeque<double[]> pool = new ArrayDeque<double[]>();
+
+	/** Bytes of value rows (including pooled ones) and choices. */
+	private long liveBytes = 0;
+	private long peakBytes = 0;
+
+	LowMemoryDPTable(CompactTree tree) {
+		super(tree);
+		valuesOfVertex = new double[numTaxa - 1][];
+		firstAsLeftOfVertex = new long[numTaxa - 1][];
+	}
+
+	/**
+	 * Returns the inner vertices in post-order, where the child with the
+	 * larger clade is visited first. When the lighter child of a vertex is
+	 * processed, the value row of the heavier child is alive, and since the
+	 * clade size halves with each such step, at most log n + 1 rows are alive.
+	 */
+	@Override
+	int[] getProcessingOrder() {
+		int[] order = new int[numTaxa - 1];
+		if (tree.isLeaf(tree.getRoot())) {
+			return order;
+		}
+
+		// iterative post-order with explicit stack of vertices and visit state
+		int[] stack = new int[tree.getNumberOfVertices()];
+		boolean[] expanded = new boolean[tree.getNumberOfVertices()];
+		int size = 0;
+		int numOrdered = 0;
+		stack[size++] = tree.getRoot();
+		while (size > 0) {
+			int vertex = stack[size - 1];
+			if (tree.isLeaf(vertex)) {
+				size--;
+				continue;
+			}
+			if (expanded[size - 1]) {
+				size--;
+				order[numOrdered++] = vertex;
+				continue;
+			}
+			expanded[size - 1] = true;
+
+			int heavy = tree.getFirstChild(vertex);
+			int light = tree.getSecondChild(vertex);
+			if (tree.getCladeSize(light) > tree.getCladeSize(heavy)) {
+				heavy = tree.getSecondChild(vertex);
+				light = tree.getFirstChild(vertex);
+			}
+			expanded[size] = false;
+			stack[size++] = light;
+			expanded[size] = false;
+			stack[size++] = heavy;
+		}
+		return order;
+	}
+
+	@Override
+	void startVertex(int vertex) {
+		if (pool.isEmpty()) {
+			pool.push(new double[numTaxa]);
+			liveBytes += 8 * (long) numTaxa;
+		}
+		valuesOfVertex[getRow(vertex)] = pool.pop();
+
+		int numWords = (getNumberOfPositions(vertex) + 63) >>> 6;
+		firstAsLeftOfVertex[getRow(vertex)] = new long[numWords];
+		liveBytes += 8 * (long) numWords;
+		peakBytes = Math.max(peakBytes, liveBytes);
+	}
+
+	@Override
+	void finishVertex(int vertex) {
+		release(tree.getFirstChild(vertex));
+		release(tree.getSecondChild(vertex));
+	}
+
+	private void release(int vertex) {
+		if (tree.isLeaf(vertex)) {
+			return;
+		}
+		// pooled rows still count as live memory
+		pool.push(valuesOfVertex[getRow(vertex)]);
+		valuesOfVertex[getRow(vertex)] = null;
+	}
+
+	@Override
+	int getNumberOfPositions(int vertex) {
+		return numTaxa - tree.getCladeSize(vertex) + 1;
+	}
+
+	@Override
+	int getPosition(int vertex, int k) {
+		return k;
+	}
+
+	@Override
+	double getValue(int vertex, int position) {
+		double[] values = valuesOfVertex[getRow(vertex)];
+		if (values == null) {
+			throw new AssertionError("Values of vertex " + vertex + " have already been released.");
+		}
+		return values[position];
+	}
+
+	@Override
+	boolean isFirstAsLeft(int vertex, int position) {
+		return (firstAsLeftOfVertex[getRow(vertex)][position >>> 6] & (1L << position)) != 0;
+	}
+
+	@Override
+	void set(int vertex, int k, double value, boolean firstAsLeft) {
+		valuesOfVertex[getRow(vertex)][k] = value;
+		if (firstAsLeft) {
+			firstAsLeftOfVertex[getRow(vertex)][k >>> 6] |= 1L << k;
+		}
+	}
+
+	@Override
+	long getNumberOfStates() {
+		return ((long) numTaxa - 1) * numTaxa;
+	}
+
+	@Override
+	long getPeakMemoryInBytes() {
+		return peakBytes;
+	}
+}
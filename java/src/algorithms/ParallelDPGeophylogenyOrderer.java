@@ -0,0 +1,199 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.Embedding;
+import model.Geophylogeny;
+
+/**
+ * This class computes the same leaf order as the {@link DPGeophylogenyOrderer}
+ * but computes the values of the dynamic program in parallel on a
+ * {@link ForkJoinPool}.
+ *
+ * The inner vertices are grouped into levels by their height, that is, by the
+ * maximum number of edges to a leaf in their subtree. The values of vertices on
+ * the same level only depend on lower levels and are thus independent. The
+ * positions of each vertex of a level are split into chunks, and all chunks of
+ * a level are computed in parallel. Since every value is computed exactly as
+ * in the sequential dynamic program, the resulting order is identical.
+ *
+ * In the mode {@link DPGeophylogenyOrderer.DPMode#LowMemory}, a level would
+ * keep the value rows of all its vertices alive, and those of lower levels
+ * until their parents are computed, which can be linear in the number of
+ * leaves. In this mode the vertices are therefore computed one at a time in
+ * the processing order of the table, and only the chunks of each vertex are
+ * computed in parallel. Thus the same O(log n) value rows are alive as in the
+ * sequential dynamic program, and {@link #getPeakMemoryInBytes()} is exact.
+ */
+public class ParallelDPGeophylogenyOrderer extends DPGeophylogenyOrderer {
+
+	/**
+	 * Approximate number of leaf value computations per chunk; a chunk with
+	 * the Crossings strategy does more work per position.
+	 */
+	private static final int WORK_PER_CHUNK = 1 << 14;
+
+	/**
+	 * Chunks start at multiples of 64 positions, so that no two chunks write to
+	 * the same word of a choice bitset.
+	 */
+	private static final int CHUNK_ALIGNMENT = 64;
+
+	private ForkJoinPool pool;
+
+	/** Whether vertices are computed one at a time (LowMemory mode). */
+	private boolean oneVertexAtATime;
+
+	/**
+	 * Engines that are not in use by a chunk (Crossings strategy); at most one
+	 * per thread computing chunks is created, and all of them are released
+	 * with this orderer instead of staying attached to the threads of the
+	 * pool.
+	 */
+	private ConcurrentLinkedQueue<CombinationCostEngine> combinationCostEngines;
+
+	public ParallelDPGeophylogenyOrderer(Geophylogeny geophylogeny, DPStrategy strategy) {
+		this(geophylogeny, strategy, DPMode.Dense, ForkJoinPool.commonPool());
+	}
+
+	public ParallelDPGeophylogenyOrderer(Geophylogeny geophylogeny, DPStrategy strategy,
+			DPMode mode, ForkJoinPool pool) {
+		super(geophylogeny, strategy, mode);
+		this.pool = pool;
+		this.oneVertexAtATime = (mode == DPMode.LowMemory);
+		if (strategy == DPStrategy.Crossings) {
+			combinationCostEngines = new ConcurrentLinkedQueue<CombinationCostEngine>();
+		}
+	}
+
+	@Override
+	public Embedding computeEmbedding() {
+		List<int[]> batches = oneVertexAtATime ? computeSingletons() : computeLevels();
+		for (int[] batch : batches) {
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			for (int parent : batch) {
+				table.startVertex(parent);
+				addChunks(parent, chunks);
+			}
+
+			pool.invoke(new ChunkTask(chunks, 0, chunks.size()));
+
+			for (int parent : batch) {
+				table.finishVertex(parent);
+			}
+		}
+
+		// recover order according to result
+		return recoverEmbedding();
+	}
+
+	/** Puts each inner vertex into its own batch, in processing order. */
+	private List<int[]> computeSingletons() {
+		List<int[]> singletons = new ArrayList<int[]>();
+		for (int parent : table.getProcessingOrder()) {
+			singletons.add(new int[] { parent });
+		}
+		return singletons;
+	}
+
+	/**
+	 * Groups the inner vertices by height; vertices of each level are in the
+	 * processing order of the table.
+	 */
+	private List<int[]> computeLevels() {
+		int[] levelOfVertex = new int[numVertices];
+		int numLevels = 0;
+		// children have smaller indices than their parents
+		for (int parent = numTaxa; parent < numVertices; parent++) {
+			int level = 1 + Math.max(levelOfVertex[compactTree.getFirstChild(parent)],
+					levelOfVertex[compactTree.getSecondChild(parent)]);
+			levelOfVertex[parent] = level;
+			numLevels = Math.max(numLevels, level);
+		}
+
+		int[] levelSizes = new int[numLevels];
+		for (int parent = numTaxa; parent < numVertices; parent++) {
+			levelSizes[levelOfVertex[parent] - 1]++;
+		}
+		List<int[]> levels = new ArrayList<int[]>();
+		for (int level = 0; level < numLevels; level++) {
+			levels.add(new int[levelSizes[level]]);
+			levelSizes[level] = 0;
+		}
+		for (int parent : table.getProcessingOrder()) {
+			int level = levelOfVertex[parent] - 1;
+			levels.get(level)[levelSizes[level]++] = parent;
+		}
+		return levels;
+	}
+
+	private void addChunks(int parent, List<Chunk> chunks) {
+		int numPositions = table.getNumberOfPositions(parent);
+		int workPerPosition = (strategy == DPStrategy.Crossings)
+				? compactTree.getCladeSize(parent)
+				: 1;
+		int chunkSize = Math.max(1, WORK_PER_CHUNK / workPerPosition);
+		chunkSize = ((chunkSize + CHUNK_ALIGNMENT - 1) / CHUNK_ALIGNMENT) * CHUNK_ALIGNMENT;
+
+		for (int from = 0; from < numPositions; from += chunkSize) {
+			chunks.add(new Chunk(parent, from, Math.min(from + chunkSize, numPositions)));
+		}
+	}
+
+	/** Range of positions of an inner vertex. */
+	private static class Chunk {
+
+		private int parent;
+		private int from;
+		private int to;
+
+		Chunk(int parent, int from, int to) {
+			this.parent = parent;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/** Computes a range of chunks by splitting it in halves. */
+	private class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private List<Chunk> chunks;
+		private int from;
+		private int to;
+
+		ChunkTask(List<Chunk> chunks, int from, int to) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ChunkTask(chunks, from, mid), new ChunkTask(chunks, mid, to));
+				return;
+			}
+			if (to - from == 1) {
+				Chunk chunk = chunks.get(from);
+				if (combinationCostEngines == null) {
+					computeValues(chunk.parent, chunk.from, chunk.to, null);
+					return;
+				}
+				CombinationCostEngine engine = combinationCostEngines.poll();
+				if (engine == null) {
+					engine = new CombinationCostEngine(ParallelDPGeophylogenyOrderer.this, geophylogeny,
+							compactTree);
+				}
+				computeValues(chunk.parent, chunk.from, chunk.to, engine);
+				combinationCostEngines.offer(engine);
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package algorithms;
+
+import java.util.Arrays;
+
+import model.CompactTree;
+
+/**
+ * This class implements a {@link DPTable} that only stores the positions at
+ * which the leftmost leaf of an inner vertex can actually lie. The root is at
+ * position 0, and if a vertex v lies at position i, then one child of v lies
+ * at position i and the other one at position i plus the clade size of its
+ * sibling. The positions of a vertex are thus the sums of clade sizes of
+ * siblings of some of its ancestors, which usually do not cover all positions.
+ *
+ * The positions of a vertex mostly come in runs of consecutive positions. They
+ * are thus stored as runs, such that the table takes O(s + r) memory for s
+ * states and r runs, and looking up the value of a vertex at a position takes
+ * O(log r) time.
+ */
+class SparseDPTable extends DPTable {
+
+	/** First position of each run of each inner vertex by row. */
+	private int[][] runStartsOfVertex;
+
+	/**
+	 * Index of the first state of each run of each inner vertex by row, with
+	 * the number of positions of the vertex as last entry.
+	 */
+	private int[][] runOffsetsOfVertex;
+
+	/** Values and choices of each inner vertex by row and state. */
+	private double[][] valuesOfVertex;
+	private boolean[][] firstAsLeftOfVertex;
+
+	private long numberOfStates = 0;
+	private long numberOfRuns = 0;
+
+	SparseDPTable(CompactTree tree) {
+		super(tree);
+		int numInnerVertices = numTaxa - 1;
+		runStartsOfVertex = new int[numInnerVertices][];
+		runOffsetsOfVertex = new int[numInnerVertices][];
+		valuesOfVertex = new double[numInnerVertices][];
+		firstAsLeftOfVertex = new boolean[numInnerVertices][];
+
+		if (!tree.isLeaf(tree.getRoot())) {
+			setRuns(tree.getRoot(), new int[] { 0 }, new int[] { 1 }, 1);
+		}
+
+		// parents have larger indices than their children
+		for (int parent = tree.getNumberOfVertices() - 1; parent >= numTaxa; parent--) {
+			int row = getRow(parent);
+			int numPositions = runOffsetsOfVertex[row][runStartsOfVertex[row].length];
+			valuesOfVertex[row] = new double[numPositions];
+			firstAsLeftOfVertex[row] = new boolean[numPositions];
+			numberOfStates += numPositions;
+
+			int firstChild = tree.getFirstChild(parent);
+			int secondChild = tree.getSecondChild(parent);
+			if (!tree.isLeaf(firstChild)) {
+				mergeShiftedRuns(parent, firstChild, tree.getCladeSize(secondChild));
+			}
+			if (!tree.isLeaf(secondChild)) {
+				mergeShiftedRuns(parent, secondChild, tree.getCladeSize(firstChild));
+			}
+		}
+	}
+
+	/**
+	 * Sets the positions of the given child to the union of the positions of
+	 * its parent and the positions of its parent shifted by the given offset.
+	 */
+	private void mergeShiftedRuns(int parent, int child, int offset) {
+		int[] starts = runStartsOfVertex[getRow(parent)];
+		int[] offsets = runOffsetsOfVertex[getRow(parent)];
+		int numRuns = starts.length;
+
+		int[] mergedStarts = new int[2 * numRuns];
+		int[] mergedEnds = new int[2 * numRuns];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while ((i < numRuns) || (j < numRuns)) {
+			int start;
+			int end;
+			if ((j == numRuns) || ((i < numRuns) && (starts[i] <= starts[j] + offset))) {
+				start = starts[i];
+				end = start + offsets[i + 1] - offsets[i];
+				i++;
+			} else {
+				start = starts[j] + offset;
+				end = start + offsets[j + 1] - offsets[j];
+				j++;
+			}
+			if ((size > 0) && (start <= mergedEnds[size - 1])) {
+				mergedEnds[size - 1] = Math.max(mergedEnds[size - 1], end);
+			} else {
+				mergedStarts[size] = start;
+				mergedEnds[size] = end;
+				size++;
+			}
+		}
+		setRuns(child, mergedStarts, mergedEnds, size);
+	}
+
+	private void setRuns(int vertex, int[] starts, int[] ends, int numRuns) {
+		int[] offsets = new int[numRuns + 1];
+		for (int r = 0; r < numRuns; r++) {
+			offsets[r + 1] = offsets[r] + ends[r] - starts[r];
+		}
+		runStartsOfVertex[getRow(vertex)] = Arrays.copyOf(starts, numRuns);
+		runOffsetsOfVertex[getRow(vertex)] = offsets;
+		numberOfRuns += numRuns;
+	}
+
+	@Override
+	int getNumberOfPositions(int vertex) {
+		return valuesOfVertex[getRow(vertex)].length;
+	}
+
+	@Override
+	int getPosition(int vertex, int k) {
+		int row = getRow(vertex);
+		int[] offsets = runOffsetsOfVertex[row];
+		int run = findRun(offsets, offsets.length - 1, k);
+		return runStartsOfVertex[row][run] + k - offsets[run];
+	}
+
+	@Override
+	double getValue(int vertex, int position) {
+		int row = getRow(vertex);
+		return valuesOfVertex[row][findState(row, position)];
+	}
+
+	@Override
+	boolean isFirstAsLeft(int vertex, int position) {
+		int row = getRow(vertex);
+		return firstAsLeftOfVertex[row][findState(row, position)];
+	}
+
+	@Override
+	void set(int vertex, int k, double value, boolean firstAsLeft) {
+		valuesOfVertex[getRow(vertex)][k] = value;
+		firstAsLeftOfVertex[getRow(vertex)][k] = firstAsLeft;
+	}
+
+	@Override
+	long getNumberOfStates() {
+		return numberOfStates;
+	}
+
+	@Override
+	long getPeakMemoryInBytes() {
+		// one double and one boolean per state, two ints per run
+		return 9 * numberOfStates + 8 * numberOfRuns;
+	}
+
+	private int findState(int row, int position) {
+		int[] starts = runStartsOfVertex[row];
+		int[] offsets = runOffsetsOfVertex[row];
+		int run = findRun(starts, starts.length, position);
+		if ((run < 0) || (position - starts[run] >= offsets[run + 1] - offsets[run])) {
+			throw new AssertionError("Position " + position + " is not reachable.");
+		}
+		return offsets[run] + position - starts[run];
+	}
+
+	/** Returns the last index whose value is at most the given value, or -1. */
+	private static int findRun(int[] sorted, int length, int value) {
+		int low = 0;
+		int high = length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low - 1;
+	}
+}
@@ -1,7 +1,10 @@
 package algorithms;
 
-import model.Vertex;
+import java.util.BitSet;
+
+import model.Embedding;
 import model.Geophylogeny;
+import model.Site;
 
 /**
  * This class implements the top-down greedy heuristic to improve the leaf order
@@ -13,45 +16,76 @@ import model.Geophylogeny;
  */
 public class TopDownGeophylogenyOrderer extends GeophylogenyOrderer {
 
+	/** The x-coordinate of the site of each leaf by index. */
+	private double[] siteXOfLeaf;
+
 	public TopDownGeophylogenyOrderer(Geophylogeny geophylogeny) {
 		super(geophylogeny);
+
+		siteXOfLeaf = new double[numTaxa];
+		Site[] sites = geophylogeny.getSites();
+		for (int leaf = 0; leaf < numTaxa; leaf++) {
+			siteXOfLeaf[leaf] = sites[leaf].getX();
+		}
 	}
 
 	@Override
-	public void orderLeaves() {
-		orderVertex(geophylogeny.getTree().getRoot(), 0);
-	}
+	public Embedding computeEmbedding() {
+		BitSet secondChildLeft = new BitSet(numVertices);
+		int[] positionOfLeaf = new int[numTaxa];
 
-	private void orderVertex(Vertex parent, int position) {
-		if (parent.isLeaf()) {
-			parent.setX(geophylogeny.getXByPosition(position));
-			return;
-		}
-		Vertex firstChild = parent.getFirstChild();
-		Vertex secondChild = parent.getSecondChild();
-		int crossingsFirstLeft = computeMidLineCrossings(firstChild, secondChild, position);
-		int crossingsSecondLeft = computeMidLineCrossings(secondChild, firstChild, position);
-
-		if (crossingsFirstLeft <= crossingsSecondLeft) {
-			parent.setAsLeftChild(firstChild);
-			orderVertex(firstChild, position);
-			orderVertex(secondChild, position + firstChild.getCladeSize());
-		} else {
-			parent.setAsLeftChild(secondChild);
-			orderVertex(secondChild, position);
-			orderVertex(firstChild, position + secondChild.getCladeSize());
+		int[] stack = new int[numVertices];
+		int[] stackPosition = new int[numVertices];
+		int size = 0;
+		stack[size] = compactTree.getRoot();
+		stackPosition[size] = 0;
+		size++;
+		while (size > 0) {
+			size--;
+			int parent = stack[size];
+			int position = stackPosition[size];
+			if (compactTree.isLeaf(parent)) {
+				positionOfLeaf[parent] = position;
+				continue;
+			}
+
+			int left = compactTree.getFirstChild(parent);
+			int right = compactTree.getSecondChild(parent);
+			int crossingsFirstLeft = computeMidLineCrossings(left, right, position);
+			int crossingsSecondLeft = computeMidLineCrossings(right, left, position);
+			if (crossingsFirstLeft > crossingsSecondLeft) {
+				secondChildLeft.set(parent);
+				left = compactTree.getSecondChild(parent);
+				right = compactTree.getFirstChild(parent);
+			}
+
+			stack[size] = right;
+			stackPosition[size] = position + compactTree.getCladeSize(left);
+			size++;
+			stack[size] = left;
+			stackPosition[size] = position;
+			size++;
 		}
+
+		return new Embedding(secondChildLeft, positionOfLeaf);
 	}
 
-	private int computeMidLineCrossings(Vertex leftVertex, Vertex rightVertex, int position) {
-		double mid = (geophylogeny.getXByPosition(position + leftVertex.getCladeSize())
-				+ geophylogeny.getXByPosition(position + leftVertex.getCladeSize() - 1)) / 2;
+	private int computeMidLineCrossings(int leftVertex, int rightVertex, int position) {
+		int leftSize = compactTree.getCladeSize(leftVertex);
+		double mid = (geophylogeny.getXByPosition(position + leftSize)
+				+ geophylogeny.getXByPosition(position + leftSize - 1)) / 2;
 		int sitesOppositeMid = 0;
-		for (Vertex leaf : leftVertex.getClade()) {
-			sitesOppositeMid += (geophylogeny.getSiteOfLeaf(leaf).getX() > mid) ? 1 : 0;
+		// clades are intervals of the canonical leaf order
+		int leftStart = compactTree.getCladeStart(leftVertex);
+		for (int i = leftStart; i < leftStart + leftSize; i++) {
+			int leaf = compactTree.getLeafInCanonicalOrder(i);
+			sitesOppositeMid += (siteXOfLeaf[leaf] > mid) ? 1 : 0;
 		}
-		for (Vertex leaf : rightVertex.getClade()) {
-			sitesOppositeMid += (geophylogeny.getSiteOfLeaf(leaf).getX() < mid) ? 1 : 0;
+		int rightStart = compactTree.getCladeStart(rightVertex);
+		int rightEnd = rightStart + compactTree.getCladeSize(rightVertex);
+		for (int i = rightStart; i < rightEnd; i++) {
+			int leaf = compactTree.getLeafInCanonicalOrder(i);
+			sitesOppositeMid += (siteXOfLeaf[leaf] < mid) ? 1 : 0;
 		}
 		return sitesOppositeMid;
 	}
@@ -0,0 +1,72 @@
+package experiments;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.GeophylogenyBinaryIO;
+import io.GeophylogenyIO;
+
+/**
+ * Converts all geophylogeny json files in a directory (recursively) to the
+ * binary format of {@link GeophylogenyBinaryIO}, with the same relative paths
+ * and the extension ".gphy", and then compares the load times of both formats.
+ *
+ * Usage: BinaryInstanceConverter [inputDir [outputDir [rounds]]]
+ */
+public class BinaryInstanceConverter {
+
+	private static final Path DEFAULT_INPUT_DIR = Paths.get("..", "data");
+	private static final Path DEFAULT_OUTPUT_DIR = Paths.get("..", "output", "binary");
+	private static final int DEFAULT_ROUNDS = 5;
+
+	public static final String BINARY_EXTENSION = ".gphy";
+
+	public static void main(String[] args) throws IOException {
+		Path inputDir = (args.length > 0) ? Paths.get(args[0]) : DEFAULT_INPUT_DIR;
+		Path outputDir = (args.length > 1) ? Paths.get(args[1]) : DEFAULT_OUTPUT_DIR;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+
+		List<Path> jsonFiles;
+		try (Stream<Path> paths = Files.walk(inputDir)) {
+			jsonFiles = paths.filter(path -> path.toString().endsWith(".json")).sorted()
+					.collect(Collectors.toList());
+		}
+
+		String[] binaryFiles = new String[jsonFiles.size()];
+		for (int i = 0; i < jsonFiles.size(); i++) {
+			Path jsonFile = jsonFiles.get(i);
+			String name = inputDir.relativize(jsonFile).toString();
+			Path binaryFile = outputDir.resolve(name.substring(0, name.length() - ".json".length())
+					+ BINARY_EXTENSION);
+			Files.createDirectories(binaryFile.getParent());
+			GeophylogenyBinaryIO.convertJSONToBinary(jsonFile.toString(), binaryFile.toString());
+			binaryFiles[i] = binaryFile.toString();
+		}
+		System.out.println("Converted " + jsonFiles.size() + " files to: " + outputDir.toAbsolutePath());
+
+		// first round warms up
+		for (int round = 0; round <= rounds; round++) {
+			long start = System.nanoTime();
+			for (Path jsonFile : jsonFiles) {
+				GeophylogenyIO.readGeophylogenyFromJSON(jsonFile.toString());
+			}
+			long jsonTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (String binaryFile : binaryFiles) {
+				GeophylogenyBinaryIO.readGeophylogenyFromBinary(binaryFile);
+			}
+			long binaryTime = System.nanoTime() - start;
+
+			if (round > 0) {
+				System.out.printf("round %d: json %.1f ms, binary %.1f ms%n", round, jsonTime / 1e6,
+						binaryTime / 1e6);
+			}
+		}
+	}
+}
@@ -10,7 +10,7 @@ import algorithms.GeophylogenyOrderer;
 import algorithms.GreedyGeophylogenyOrderOptimizer;
 import algorithms.TopDownGeophylogenyOrderer;
 import algorithms.DPGeophylogenyOrderer.DPStrategy;
-import io.GeophylogenyDrawer;
+import io.GeophylogenyBatchDrawer;
 import io.GeophylogenyIO;
 import model.Geophylogeny;
 import model.Leader;
@@ -25,6 +25,11 @@ import model.Vertex;
  * 
  * To use, set parameters and paths as wanted, comment in/out different
  * heuristics, and output. The experiment results are printed to the console.
+ * The best drawing of each instance is saved; with the argument
+ * {@value #SAVE_INTERMEDIATE_DRAWINGS_ARGUMENT}, also the drawing after each
+ * heuristic.
+ *
+ * Usage: GeophylogenyExperimenter [--save-intermediate-drawings]
  *
  * @author Jonathan Klawitter
  */
@@ -57,6 +62,12 @@ public class GeophylogenyExperimenter {
 	private static final double RW_SCALE_LIZARD = 30.0;
 	private static final double RW_SCALE_FROGS = 15.0;
 
+	/** Whether to save a drawing after each heuristic, not only the best. */
+	private static boolean saveIntermediateDrawings = false;
+	private static final String SAVE_INTERMEDIATE_DRAWINGS_ARGUMENT = "--save-intermediate-drawings";
+	/** Draws in the background; snapshots are taken before each submission. */
+	private static final GeophylogenyBatchDrawer DRAWER = new GeophylogenyBatchDrawer();
+
 	private static StringBuilder size = new StringBuilder(String.format("%-17s", "size: "));
 	// heuristics on their own
 	private static final StringBuilder optimizerOnly = new StringBuilder(String.format("%-17s", "greedyOptimizer: ")); // String.format is to left-justify text
@@ -85,6 +96,15 @@ public class GeophylogenyExperimenter {
 	}
 
 	public static void main(String[] args) {
+		for (String arg : args) {
+			if (arg.equals(SAVE_INTERMEDIATE_DRAWINGS_ARGUMENT)) {
+				saveIntermediateDrawings = true;
+			} else {
+				System.err.println("Unknown argument: " + arg);
+				System.err.println("Usage: GeophylogenyExperimenter [" + SAVE_INTERMEDIATE_DRAWINGS_ARGUMENT + "]");
+				return;
+			}
+		}
 
 		if (EXPERIMENT_TYPE == ExperimentType.GENERATED_INSTANCE) {
 			int numClusters = 2;
@@ -175,6 +195,11 @@ public class GeophylogenyExperimenter {
 		System.out.println(euclideanP);
 		System.out.println(horizontalP);
 		System.out.println(hopP);
+
+		DRAWER.close();
+		if (DRAWER.getNumberOfFailed() > 0) {
+			System.err.println(DRAWER.getNumberOfFailed() + " drawings failed.");
+		}
 	}
 
 	private static BestDrawing runExperimentOnInstance(Geophylogeny geophylo, String name, boolean trackBest) {
@@ -188,7 +213,9 @@ public class GeophylogenyExperimenter {
 		crossings = geophylo.computeNumberOfCrossings();
 		optimizerOnly.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-optimizerOnly", trackBest);
-		// saveDrawing(geophylo, name + "-optimizerOnly");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-optimizerOnly");
+		}
 
 		// 2. TopDown
 		GeophylogenyOrderer ordered = new TopDownGeophylogenyOrderer(geophylo);
@@ -196,13 +223,17 @@ public class GeophylogenyExperimenter {
 		crossings = geophylo.computeNumberOfCrossings();
 		topDown.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-topDown", trackBest);
-		// saveDrawing(geophylo, name + "-topDown");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-topDown");
+		}
 
 		optimizer.orderLeaves();
 		crossings = geophylo.computeNumberOfCrossings();
 		topDownP.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-topDownPlus", trackBest);
-		// saveDrawing(geophylo, name + "-topDownPlus");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-topDownPlus");
+		}
 
 		// 3. BottomUp (DP Crossings)
 		ordered = new DPGeophylogenyOrderer(geophylo, DPStrategy.Crossings);
@@ -210,13 +241,17 @@ public class GeophylogenyExperimenter {
 		crossings = geophylo.computeNumberOfCrossings();
 		bottomUp.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-bottomUp", trackBest);
-		// saveDrawing(geophylo, name + "-bottomUp");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-bottomUp");
+		}
 
 		optimizer.orderLeaves();
 		crossings = geophylo.computeNumberOfCrossings();
 		bottomUpP.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-bottomUpPlus", trackBest);
-		// saveDrawing(geophylo, name + "-bottomUpPlus");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-bottomUpPlus");
+		}
 
 		// 4. Quality Measure: Euclidean (also DP)
 		ordered = new DPGeophylogenyOrderer(geophylo, DPStrategy.EuclideanDistance);
@@ -224,13 +259,17 @@ public class GeophylogenyExperimenter {
 		crossings = geophylo.computeNumberOfCrossings();
 		euclidean.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-euclidean", trackBest);
-		// saveDrawing(geophylo, name + "-euclidean");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-euclidean");
+		}
 
 		optimizer.orderLeaves();
 		crossings = geophylo.computeNumberOfCrossings();
 		euclideanP.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-euclideanPlus", trackBest);
-		// saveDrawing(geophylo, name + "-euclideanPlus");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-euclideanPlus");
+		}
 
 		// 5. Quality Measure: Horizontal (XOffset) (also DP)
 		ordered = new DPGeophylogenyOrderer(geophylo, DPStrategy.HorizontalDistance);
@@ -238,13 +277,17 @@ public class GeophylogenyExperimenter {
 		crossings = geophylo.computeNumberOfCrossings();
 		horizontal.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-horizontal", trackBest);
-		// saveDrawing(geophylo, name + "-horizontal");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-horizontal");
+		}
 
 		optimizer.orderLeaves();
 		crossings = geophylo.computeNumberOfCrossings();
 		horizontalP.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-horizontalPlus", trackBest);
-		// saveDrawing(geophylo, name + "-horizontalPlus");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-horizontalPlus");
+		}
 
 		// 6. Quality Measure: Hop (IndexOffset) (also DP)
 		ordered = new DPGeophylogenyOrderer(geophylo, DPStrategy.Hops);
@@ -252,21 +295,28 @@ public class GeophylogenyExperimenter {
 		crossings = geophylo.computeNumberOfCrossings();
 		hop.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-hop", trackBest);
-		// saveDrawing(geophylo, name + "-hop");
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-hop");
+		}
 
 		optimizer.orderLeaves();
 		crossings = geophylo.computeNumberOfCrossings();
 		hopP.append(crossings).append(", ");
 		best = updateBest(best, geophylo, crossings, name + "-hopPlus", trackBest);
+		if (saveIntermediateDrawings) {
+			saveDrawing(geophylo, name + "-hopPlus");
+		}
 
 		return best;
 	}
 
+	/**
+	 * Submits a snapshot of the current drawing to the background drawer, so
+	 * that the given geophylogeny can be changed right away.
+	 */
 	private static void saveDrawing(Geophylogeny geophylo, String filename) {
 		ensureOutputDir();
-		geophylo.computeXCoordinates();
-		GeophylogenyDrawer drawer = new GeophylogenyDrawer(geophylo, FILE_PATH + filename + "-" + getFormattedTimeNow() + ".svg");
-		drawer.drawGeophylogeny();
+		DRAWER.submit(cloneGeophylogeny(geophylo), FILE_PATH + filename + "-" + getFormattedTimeNow() + ".svg");
 		// System.out.println("Drawing saved to: " + FILE_PATH + filename + ".svg");
 	}
 
@@ -287,9 +337,9 @@ public class GeophylogenyExperimenter {
 		return currentBest;
 	}
 
-	private static Geophylogeny cloneGeophylogeny(Geophylogeny original) {
+	static Geophylogeny cloneGeophylogeny(Geophylogeny original) {
 		Tree originalTree = original.getTree();
-		Vertex rootCopy = copyVertex(originalTree.getRoot());
+		Vertex rootCopy = copyVertices(originalTree);
 		Tree treeCopy = new Tree(rootCopy, originalTree.getNumberOfLeaves(), originalTree.getStateNumber());
 		treeCopy.setName(originalTree.getName());
 
@@ -320,27 +370,34 @@ public class GeophylogenyExperimenter {
 		return copy;
 	}
 
-	private static Vertex copyVertex(Vertex original) {
-		Vertex copy;
-		if (original.isLeaf()) {
-			copy = new Vertex(original.getID());
-		} else {
-			Vertex leftCopy = copyVertex(original.getLeftChild());
-			Vertex rightCopy = copyVertex(original.getRightChild());
-			copy = new Vertex(original.getID(), leftCopy, rightCopy);
-		}
+	private static Vertex copyVertices(Tree originalTree) {
+		Vertex[] copies = new Vertex[originalTree.getNumberOfVertices()]; // indexed by id-1
+		Vertex[] preOrder = originalTree.getVerticesInPreOrder();
+		// children before parents
+		for (int i = preOrder.length - 1; i >= 0; i--) {
+			Vertex original = preOrder[i];
+			Vertex copy;
+			if (original.isLeaf()) {
+				copy = new Vertex(original.getID());
+			} else {
+				Vertex leftCopy = copies[original.getLeftChild().getID() - 1];
+				Vertex rightCopy = copies[original.getRightChild().getID() - 1];
+				copy = new Vertex(original.getID(), leftCopy, rightCopy);
+			}
 
-		copy.setTaxonName(original.getTaxonName());
-		copy.setBranchLengthIncoming(original.getBranchLengthIncoming());
-		copy.setPopulationSize(original.getPopulationSize());
-		copy.setDiscreteDepth(original.getDiscreteDepth());
-		copy.setDepth(original.getDepth());
-		copy.setHeight(original.getHeight());
-		if (original.isFixed()) {
-			copy.setFixed();
+			copy.setTaxonName(original.getTaxonName());
+			copy.setBranchLengthIncoming(original.getBranchLengthIncoming());
+			copy.setPopulationSize(original.getPopulationSize());
+			copy.setDiscreteDepth(original.getDiscreteDepth());
+			copy.setDepth(original.getDepth());
+			copy.setHeight(original.getHeight());
+			if (original.isFixed()) {
+				copy.setFixed();
+			}
+			copies[original.getID() - 1] = copy;
 		}
 
-		return copy;
+		return copies[originalTree.getRoot().getID() - 1];
 	}
 
 	private static String getFormattedTimeNow() {
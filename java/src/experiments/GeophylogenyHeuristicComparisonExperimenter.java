@@ -1,39 +1,51 @@
 package experiments;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 import algorithms.DPGeophylogenyOrderer;
 import algorithms.GeophylogenyOrderer;
 import algorithms.GreedyGeophylogenyOrderOptimizer;
 import algorithms.TopDownGeophylogenyOrderer;
 import algorithms.DPGeophylogenyOrderer.DPStrategy;
-import io.GeophylogenyIO;
+import io.GeophylogenyArchive;
+import model.Embedding;
 import model.Geophylogeny;
 import model.Leader.GeophylogenyLeaderType;
-import model.Site;
-import model.Tree;
-import model.Vertex;
 
 /**
  * Reads the ILP-optimal crossings from ../output/crossings.csv and computes
- * crossings for all heuristics on the generated instances in ../data/generated.
+ * crossings for all heuristics on the generated instances, which are read
+ * directly from ../data/generated.zip.
  * Outputs a new CSV with one column per heuristic.
+ *
+ * Each instance is read once and then shared read-only by one task per
+ * heuristic, as the heuristics only compute embeddings and count their
+ * crossings without changing the instance. The tasks run on a work-stealing
+ * pool with as many threads as processors, or as given by the first argument.
+ * Rows are written in the order of the input CSV, and the wall time of each
+ * task (without reading the instance) is written to
+ * ../output/heuristic_task_times.csv.
+ *
+ * Usage: GeophylogenyHeuristicComparisonExperimenter [threads]
  */
 public class GeophylogenyHeuristicComparisonExperimenter {
 
 	private static final Path INPUT_CROSSINGS = Paths.get("..", "output", "crossings.csv");
-	private static final Path GENERATED_DIR = Paths.get("..", "data", "generated");
+	private static final Path GENERATED_ZIP = Paths.get("..", "data", "generated.zip");
 	private static final Path OUTPUT_CROSSINGS = Paths.get("..", "output", "crossings_with_heuristics.csv");
+	private static final Path OUTPUT_TASK_TIMES = Paths.get("..", "output", "heuristic_task_times.csv");
 
 	private static final GeophylogenyLeaderType LEADER_TYPE = GeophylogenyLeaderType.S;
 
@@ -53,51 +65,99 @@ public class GeophylogenyHeuristicComparisonExperimenter {
 			"hopPlus");
 
 	public static void main(String[] args) throws IOException {
+		int numberOfThreads = (args.length > 0) ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+
 		LinkedHashMap<String, Integer> optimalByFile = readOptimalCrossings(INPUT_CROSSINGS);
-		Map<String, Path> generatedFiles = indexGeneratedFiles(GENERATED_DIR);
+		if (!Files.exists(GENERATED_ZIP)) {
+			throw new IOException("Generated instances archive not found: " + GENERATED_ZIP.toAbsolutePath());
+		}
+
+		List<String> filenames = new ArrayList<>(optimalByFile.keySet());
+		int[][] crossings = new int[filenames.size()][]; // null for missing instances
+		long[][] taskTimes = new long[filenames.size()][];
+
+		long start = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		try (GeophylogenyArchive generatedInstances = new GeophylogenyArchive(GENERATED_ZIP)) {
+			List<CompletableFuture<Void>> tasks = new ArrayList<>();
+			for (int i = 0; i < filenames.size(); i++) {
+				String filename = filenames.get(i);
+				if (!generatedInstances.containsInstance(filename)) {
+					System.err.println("Missing generated instance for: " + filename);
+					continue;
+				}
+				crossings[i] = new int[HEADER.size() - 2];
+				taskTimes[i] = new long[Heuristic.values().length];
+				int[] instanceCrossings = crossings[i];
+				long[] instanceTaskTimes = taskTimes[i];
+				CompletableFuture<Geophylogeny> instance = CompletableFuture
+						.supplyAsync(() -> readInstance(generatedInstances, filename), pool);
+				for (Heuristic heuristic : Heuristic.values()) {
+					tasks.add(instance.thenAcceptAsync(geophylogeny -> {
+						long taskStart = System.nanoTime();
+						heuristic.run(geophylogeny, instanceCrossings);
+						instanceTaskTimes[heuristic.ordinal()] = System.nanoTime() - taskStart;
+					}, pool));
+				}
+			}
+			CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+		} finally {
+			pool.shutdown();
+		}
+		long wallTime = System.nanoTime() - start;
 
 		StringBuilder output = new StringBuilder(String.join(",", HEADER));
 		output.append(System.lineSeparator());
-
-		for (Map.Entry<String, Integer> entry : optimalByFile.entrySet()) {
-			String filename = entry.getKey();
-			int optimal = entry.getValue();
-
-			Path instancePath = generatedFiles.get(filename);
-			if (instancePath == null) {
-				System.err.println("Missing generated instance for: " + filename);
-				output.append(filename).append(",").append(optimal);
-				for (int i = 0; i < HEADER.size() - 2; i++) {
-					output.append(",");
+		StringBuilder times = new StringBuilder("filename");
+		for (Heuristic heuristic : Heuristic.values()) {
+			times.append(",").append(heuristic.name);
+		}
+		times.append(System.lineSeparator());
+		long totalTaskTime = 0;
+		for (int i = 0; i < filenames.size(); i++) {
+			String filename = filenames.get(i);
+			output.append(filename).append(",").append(optimalByFile.get(filename));
+			times.append(filename);
+			for (int column = 0; column < HEADER.size() - 2; column++) {
+				output.append(",");
+				if (crossings[i] != null) {
+					output.append(crossings[i][column]);
 				}
-				output.append(System.lineSeparator());
-				continue;
 			}
-
-			Geophylogeny geophylogeny = GeophylogenyIO.readGeophylogenyFromJSON(instancePath.toString());
-			geophylogeny.setLeaderType(LEADER_TYPE);
-
-			HeuristicResults results = computeHeuristics(geophylogeny);
-			output.append(filename).append(",").append(optimal).append(",")
-					.append(results.optimizerOnly).append(",")
-					.append(results.topDown).append(",")
-					.append(results.bottomUp).append(",")
-					.append(results.euclidean).append(",")
-					.append(results.horizontal).append(",")
-					.append(results.hop).append(",")
-					.append(results.topDownPlus).append(",")
-					.append(results.bottomUpPlus).append(",")
-					.append(results.euclideanPlus).append(",")
-					.append(results.horizontalPlus).append(",")
-					.append(results.hopPlus)
-					.append(System.lineSeparator());
+			for (int task = 0; task < Heuristic.values().length; task++) {
+				times.append(",");
+				if (taskTimes[i] != null) {
+					times.append(String.format(Locale.ROOT, "%.3f", taskTimes[i][task] / 1e6));
+					totalTaskTime += taskTimes[i][task];
+				}
+			}
+			output.append(System.lineSeparator());
+			times.append(System.lineSeparator());
 		}
 
 		Files.createDirectories(OUTPUT_CROSSINGS.getParent());
 		Files.writeString(OUTPUT_CROSSINGS, output.toString(),
 				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		Files.writeString(OUTPUT_TASK_TIMES, times.toString(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
 		System.out.println("Wrote: " + OUTPUT_CROSSINGS.toAbsolutePath());
+		System.out.println("Wrote task times (ms): " + OUTPUT_TASK_TIMES.toAbsolutePath());
+		System.out.printf("%d threads: wall time %.1f s, total task time %.1f s%n", numberOfThreads,
+				wallTime / 1e9, totalTaskTime / 1e9);
+	}
+
+	private static Geophylogeny readInstance(GeophylogenyArchive generatedInstances, String filename) {
+		try {
+			Geophylogeny geophylogeny = generatedInstances.readInstance(filename);
+			geophylogeny.setLeaderType(LEADER_TYPE);
+			// computes the lazily stored leaf order before the instance is shared
+			geophylogeny.getTree().getLeavesInOrder();
+			return geophylogeny;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	private static LinkedHashMap<String, Integer> readOptimalCrossings(Path path) throws IOException {
@@ -141,138 +201,60 @@ public class GeophylogenyHeuristicComparisonExperimenter {
 		return map;
 	}
 
-	private static Map<String, Path> indexGeneratedFiles(Path dir) throws IOException {
-		if (!Files.exists(dir)) {
-			throw new IOException("Generated instances folder not found: " + dir.toAbsolutePath());
-		}
-
-		Map<String, Path> map = new HashMap<>();
-		try (Stream<Path> paths = Files.walk(dir)) {
-			paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".json"))
-					.forEach(path -> {
-						String name = path.getFileName().toString();
-						if (map.containsKey(name)) {
-							System.err.println("Duplicate generated filename: " + name
-									+ " -> " + map.get(name) + " and " + path);
-						} else {
-							map.put(name, path);
-						}
-					});
-		}
-		return map;
-	}
-
-	private static HeuristicResults computeHeuristics(Geophylogeny original) {
-		int optimizerOnly = runOptimizerOnly(cloneForExperiment(original));
-
-		HeuristicPair topDown = runHeuristicWithPlus(original,
-				geophylogeny -> new TopDownGeophylogenyOrderer(geophylogeny));
-		HeuristicPair bottomUp = runHeuristicWithPlus(original,
-				geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.Crossings));
-		HeuristicPair euclidean = runHeuristicWithPlus(original,
-				geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.EuclideanDistance));
-		HeuristicPair horizontal = runHeuristicWithPlus(original,
-				geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.HorizontalDistance));
-		HeuristicPair hop = runHeuristicWithPlus(original,
-				geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.Hops));
-
-		return new HeuristicResults(
-				optimizerOnly,
-				topDown.base,
-				bottomUp.base,
-				euclidean.base,
-				horizontal.base,
-				hop.base,
-				topDown.plus,
-				bottomUp.plus,
-				euclidean.plus,
-				horizontal.plus,
-				hop.plus);
-	}
-
 	private static int runOptimizerOnly(Geophylogeny geophylogeny) {
 		GeophylogenyOrderer optimizer = new GreedyGeophylogenyOrderOptimizer(geophylogeny);
-		optimizer.orderLeaves();
-		return geophylogeny.computeNumberOfCrossings();
+		return optimizer.computeEmbedding().computeNumberOfCrossings(geophylogeny);
 	}
 
 	private static HeuristicPair runHeuristicWithPlus(
-			Geophylogeny original,
+			Geophylogeny geophylogeny,
 			Function<Geophylogeny, GeophylogenyOrderer> ordererFactory) {
-		Geophylogeny geophylogeny = cloneForExperiment(original);
 		GeophylogenyOrderer orderer = ordererFactory.apply(geophylogeny);
-		orderer.orderLeaves();
-		int base = geophylogeny.computeNumberOfCrossings();
+		Embedding embedding = orderer.computeEmbedding();
+		int base = embedding.computeNumberOfCrossings(geophylogeny);
 
-		GeophylogenyOrderer optimizer = new GreedyGeophylogenyOrderOptimizer(geophylogeny);
-		optimizer.orderLeaves();
-		int plus = geophylogeny.computeNumberOfCrossings();
+		GreedyGeophylogenyOrderOptimizer optimizer = new GreedyGeophylogenyOrderOptimizer(geophylogeny);
+		int plus = optimizer.computeEmbedding(embedding).computeNumberOfCrossings(geophylogeny);
 
 		return new HeuristicPair(base, plus);
 	}
 
-	private static Geophylogeny cloneForExperiment(Geophylogeny original) {
-		Geophylogeny copy = cloneGeophylogeny(original);
-		copy.computeXCoordinates();
-		return copy;
-	}
-
-	private static Geophylogeny cloneGeophylogeny(Geophylogeny original) {
-		Tree originalTree = original.getTree();
-		Vertex rootCopy = copyVertex(originalTree.getRoot());
-		Tree treeCopy = new Tree(rootCopy, originalTree.getNumberOfLeaves(),
-				originalTree.getStateNumber());
-		treeCopy.setName(originalTree.getName());
-
-		Site[] originalSites = original.getSites();
-		Site[] sitesCopy = new Site[originalSites.length];
-		for (int i = 0; i < originalSites.length; i++) {
-			Site originalSite = originalSites[i];
-			Site siteCopy = new Site(originalSite.getX(), originalSite.getY());
-			siteCopy.setCluster(originalSite.getCluster());
-			sitesCopy[i] = siteCopy;
-		}
-
-		Vertex[] leaves = treeCopy.getLeavesInIndexOrder();
-		for (int i = 0; i < leaves.length; i++) {
-			sitesCopy[i].setLeaf(leaves[i]);
+	/**
+	 * The heuristics, each run as one task on an instance shared with the other
+	 * heuristics. The optimizer alone fills the first column; the others fill
+	 * their column and the column of their plus variant.
+	 */
+	private enum Heuristic {
+		OPTIMIZER_ONLY("optimizerOnly", null),
+		TOP_DOWN("topDown", geophylogeny -> new TopDownGeophylogenyOrderer(geophylogeny)),
+		BOTTOM_UP("bottomUp", geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.Crossings)),
+		EUCLIDEAN("euclidean",
+				geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.EuclideanDistance)),
+		HORIZONTAL("horizontal",
+				geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.HorizontalDistance)),
+		HOP("hop", geophylogeny -> new DPGeophylogenyOrderer(geophylogeny, DPStrategy.Hops));
+
+		private final String name;
+		private final Function<Geophylogeny, GeophylogenyOrderer> ordererFactory;
+
+		private Heuristic(String name, Function<Geophylogeny, GeophylogenyOrderer> ordererFactory) {
+			this.name = name;
+			this.ordererFactory = ordererFactory;
 		}
 
-		Geophylogeny copy = new Geophylogeny(treeCopy, sitesCopy, original.getMapWidth(),
-				original.getMapHeight(), original.getName(), original.getLeaderType());
-		if (original.hasClusters()) {
-			Vertex[] originalLeaves = originalTree.getLeavesInIndexOrder();
-			int[] clusterOfLeaf = new int[originalLeaves.length];
-			for (int i = 0; i < originalLeaves.length; i++) {
-				clusterOfLeaf[i] = original.getClusterOfVertex(originalLeaves[i]);
+		/**
+		 * Runs this heuristic and stores its crossings in the columns (after
+		 * filename and optimal) of the given row.
+		 */
+		private void run(Geophylogeny geophylogeny, int[] row) {
+			if (ordererFactory == null) {
+				row[0] = runOptimizerOnly(geophylogeny);
+			} else {
+				HeuristicPair pair = runHeuristicWithPlus(geophylogeny, ordererFactory);
+				row[ordinal()] = pair.base;
+				row[ordinal() + values().length - 1] = pair.plus;
 			}
-			copy.setClustersByMapping(clusterOfLeaf);
-		}
-
-		return copy;
-	}
-
-	private static Vertex copyVertex(Vertex original) {
-		Vertex copy;
-		if (original.isLeaf()) {
-			copy = new Vertex(original.getID());
-		} else {
-			Vertex leftCopy = copyVertex(original.getLeftChild());
-			Vertex rightCopy = copyVertex(original.getRightChild());
-			copy = new Vertex(original.getID(), leftCopy, rightCopy);
-		}
-
-		copy.setTaxonName(original.getTaxonName());
-		copy.setBranchLengthIncoming(original.getBranchLengthIncoming());
-		copy.setPopulationSize(original.getPopulationSize());
-		copy.setDiscreteDepth(original.getDiscreteDepth());
-		copy.setDepth(original.getDepth());
-		copy.setHeight(original.getHeight());
-		if (original.isFixed()) {
-			copy.setFixed();
 		}
-
-		return copy;
 	}
 
 	private static final class HeuristicPair {
@@ -284,43 +266,4 @@ public class GeophylogenyHeuristicComparisonExperimenter {
 			this.plus = plus;
 		}
 	}
-
-	private static final class HeuristicResults {
-		private final int optimizerOnly;
-		private final int topDown;
-		private final int bottomUp;
-		private final int euclidean;
-		private final int horizontal;
-		private final int hop;
-		private final int topDownPlus;
-		private final int bottomUpPlus;
-		private final int euclideanPlus;
-		private final int horizontalPlus;
-		private final int hopPlus;
-
-		private HeuristicResults(
-				int optimizerOnly,
-				int topDown,
-				int bottomUp,
-				int euclidean,
-				int horizontal,
-				int hop,
-				int topDownPlus,
-				int bottomUpPlus,
-				int euclideanPlus,
-				int horizontalPlus,
-				int hopPlus) {
-			this.optimizerOnly = optimizerOnly;
-			this.topDown = topDown;
-			this.bottomUp = bottomUp;
-			this.euclidean = euclidean;
-			this.horizontal = horizontal;
-			this.hop = hop;
-			this.topDownPlus = topDownPlus;
-			this.bottomUpPlus = bottomUpPlus;
-			this.euclideanPlus = euclideanPlus;
-			this.horizontalPlus = horizontalPlus;
-			this.hopPlus = hopPlus;
-		}
-	}
 }
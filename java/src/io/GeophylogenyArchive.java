@@ -0,0 +1,115 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import model.Geophylogeny;
+
+/**
+ * This class provides the geophylogeny json files of a zip archive, such as
+ * data/generated.zip, without extracting them. The archive is opened once and
+ * each instance is parsed directly from the stream of its entry. Instances are
+ * identified by their file name without directories, as the names in the
+ * crossing tables of the experiments.
+ *
+ * Instances can be read concurrently from different threads.
+ */
+public class GeophylogenyArchive implements Closeable {
+
+	private final ZipFile zipFile;
+
+	/** Json entries by file name, in archive order. */
+	private final Map<String, ZipEntry> entries = new LinkedHashMap<String, ZipEntry>();
+
+	/**
+	 * Opens the given zip archive and indexes its json entries.
+	 *
+	 * @param zipPath
+	 *            path to the zip archive
+	 * @throws IOException
+	 *             if the archive cannot be opened
+	 */
+	public GeophylogenyArchive(Path zipPath) throws IOException {
+		this.zipFile = new ZipFile(zipPath.toFile());
+		Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+		while (zipEntries.hasMoreElements()) {
+			ZipEntry entry = zipEntries.nextElement();
+			if (entry.isDirectory() || !entry.getName().endsWith(".json")) {
+				continue;
+			}
+			String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+			if (entries.containsKey(name)) {
+				System.err.println("Duplicate instance filename: " + name + " -> "
+						+ entries.get(name).getName() + " and " + entry.getName());
+			} else {
+				entries.put(name, entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the file names of the instances in this archive, in archive
+	 * order.
+	 *
+	 * @return the file names of the instances
+	 */
+	public Set<String> getInstanceNames() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public boolean containsInstance(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * Reads the instance with the given file name from this archive.
+	 *
+	 * @param name
+	 *            file name of the instance
+	 * @return the read geophylogeny, or null if there is no such instance
+	 * @throws IOException
+	 *             if the entry cannot be read
+	 */
+	public Geophylogeny readInstance(String name) throws IOException {
+		ZipEntry entry = entries.get(name);
+		if (entry == null) {
+			return null;
+		}
+		return GeophylogenyIO.readGeophylogenyFromJSON(zipFile.getInputStream(entry));
+	}
+
+	/**
+	 * Reads all instances of this archive and passes each with its file name to
+	 * the given action. If parallel, instances are read and handled
+	 * concurrently in the common fork/join pool, in no particular order.
+	 *
+	 * @param parallel
+	 *            whether to read the instances in parallel
+	 * @param action
+	 *            action for each file name and instance
+	 */
+	public void forEachInstance(boolean parallel, BiConsumer<String, Geophylogeny> action) {
+		(parallel ? entries.keySet().parallelStream() : entries.keySet().stream()).forEach(name -> {
+			try {
+				action.accept(name, readInstance(name));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		zipFile.close();
+	}
+}
@@ -0,0 +1,139 @@
+package io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Geophylogeny;
+
+/**
+ * This class draws geophylogenies into svg files on a bounded pool of
+ * background threads, so that experiments can save drawings without waiting
+ * for them.
+ *
+ * Each job is a snapshot of a geophylogeny, which the drawer owns from then
+ * on: its x-coordinates are computed and it is drawn with a
+ * {@link GeophylogenyDrawer} on a worker thread, gzip-compressed if the file
+ * name ends with ".svgz". At most a fixed number of jobs can be pending (queued
+ * or running); if that many are pending, submitting blocks until one has
+ * finished, which bounds the memory used by snapshots.
+ *
+ * Failed jobs are reported to System.err and counted. {@link #close()} waits
+ * until all submitted jobs have finished.
+ */
+public class GeophylogenyBatchDrawer implements AutoCloseable {
+
+	private final ThreadPoolExecutor executor;
+	private final Semaphore pendingJobs;
+
+	private final AtomicInteger numberOfDrawn = new AtomicInteger();
+	private final AtomicInteger numberOfFailed = new AtomicInteger();
+
+	/**
+	 * Creates a batch drawer with one thread per available processor but one,
+	 * and at most four pending jobs per thread.
+	 */
+	public GeophylogenyBatchDrawer() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	public GeophylogenyBatchDrawer(int numberOfThreads) {
+		this(numberOfThreads, 4 * numberOfThreads);
+	}
+
+	/**
+	 * Creates a batch drawer.
+	 *
+	 * @param numberOfThreads
+	 *            number of threads drawing concurrently
+	 * @param maxPendingJobs
+	 *            maximum number of jobs queued or running, before submitting
+	 *            blocks
+	 */
+	public GeophylogenyBatchDrawer(int numberOfThreads, int maxPendingJobs) {
+		if (numberOfThreads < 1 || maxPendingJobs < 1) {
+			throw new IllegalArgumentException("Need at least one thread and one pending job.");
+		}
+		this.pendingJobs = new Semaphore(maxPendingJobs);
+		AtomicInteger numberOfThreadsCreated = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable,
+							"geophylogeny-drawer-" + numberOfThreadsCreated.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * Submits a snapshot of a geophylogeny to be drawn into the given file.
+	 * Blocks while the maximum number of jobs is pending. The snapshot must not
+	 * be used by the caller afterwards.
+	 *
+	 * @param snapshot
+	 *            geophylogeny to draw, owned by this drawer from now on
+	 * @param filename
+	 *            path of the svg file
+	 * @return future that completes when the file has been written
+	 */
+	public Future<?> submit(Geophylogeny snapshot, String filename) {
+		pendingJobs.acquireUninterruptibly();
+		try {
+			return executor.submit(() -> {
+				try {
+					draw(snapshot, filename);
+					numberOfDrawn.incrementAndGet();
+				} catch (IOException | RuntimeException e) {
+					numberOfFailed.incrementAndGet();
+					System.err.println("Couldn't draw " + filename + ": " + e);
+				} finally {
+					pendingJobs.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			pendingJobs.release();
+			throw e;
+		}
+	}
+
+	private static void draw(Geophylogeny snapshot, String filename) throws IOException {
+		snapshot.computeXCoordinates();
+		try (OutputStream out = GeophylogenyDrawer.openSVGFile(filename)) {
+			new GeophylogenyDrawer(snapshot, filename).drawGeophylogeny(out);
+		}
+	}
+
+	public int getNumberOfDrawn() {
+		return numberOfDrawn.get();
+	}
+
+	public int getNumberOfFailed() {
+		return numberOfFailed.get();
+	}
+
+	/**
+	 * Waits until all submitted jobs have finished and stops the threads.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import model.Geophylogeny;
+import model.Leader.GeophylogenyLeaderType;
+import model.Site;
+import model.Tree;
+import model.Vertex;
+
+/**
+ * This class provides methods to read and write geophylogenies in a compact
+ * binary format, which is read by mapping the file into memory and copying
+ * its arrays in bulk instead of parsing text.
+ *
+ * All values are little-endian. The format of version 1 is:
+ * <ul>
+ * <li>header: the ints magic ("GPHY"), version, map width, map height,
+ * leader type (ordinal), number of clusters, number of leaves n, root index,
+ * number of sites s, and title length in bytes (-1 if there is no title)</li>
+ * <li>the title in UTF-8</li>
+ * <li>the ints left child and right child of each of the 2n - 1 vertices (by
+ * index), -1 for leaves</li>
+ * <li>the int site index of each leaf (by index)</li>
+ * <li>the int cluster of each site</li>
+ * <li>the doubles x of each site, then the doubles y of each site</li>
+ * </ul>
+ * Like the json format, the tree is stored with its current embedding, that
+ * is, the left child of each vertex becomes its first child when reading.
+ *
+ * @see GeophylogenyIO
+ */
+public class GeophylogenyBinaryIO {
+
+	/** "GPHY" */
+	public static final int MAGIC = 0x47504859;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 10 * Integer.BYTES;
+
+	/**
+	 * Writes a given geophylogeny in the binary format to the given filepath.
+	 *
+	 * @param geophylogeny
+	 *            geophylogeny to be stored
+	 * @param filepath
+	 *            complete path for the output file
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void writeGeophylogenyToBinary(Geophylogeny geophylogeny, String filepath)
+			throws IOException {
+		Tree tree = geophylogeny.getTree();
+		Site[] sites = geophylogeny.getSites();
+		int numLeaves = tree.getNumberOfLeaves();
+		int numVertices = tree.getNumberOfVertices();
+		byte[] title = (geophylogeny.getName() != null)
+				? geophylogeny.getName().getBytes(StandardCharsets.UTF_8)
+				: null;
+		int titleLength = (title != null) ? title.length : 0;
+
+		int bytes = HEADER_BYTES + titleLength + (2 * numVertices + numLeaves + sites.length) * Integer.BYTES
+				+ 2 * sites.length * Double.BYTES;
+		ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION)//
+				.putInt(geophylogeny.getMapWidth()).putInt(geophylogeny.getMapHeight())//
+				.putInt(geophylogeny.getLeaderType().ordinal())//
+				.putInt(geophylogeny.getNumberOfClusters())//
+				.putInt(numLeaves).putInt(tree.getRoot().getIndex())//
+				.putInt(sites.length)//
+				.putInt((title != null) ? title.length : -1);
+		if (title != null) {
+			buffer.put(title);
+		}
+
+		Vertex[] vertices = tree.getVertices();
+		for (Vertex vertex : vertices) {
+			buffer.putInt(vertex.isLeaf() ? -1 : vertex.getLeftChild().getIndex());
+		}
+		for (Vertex vertex : vertices) {
+			buffer.putInt(vertex.isLeaf() ? -1 : vertex.getRightChild().getIndex());
+		}
+
+		int[] siteOfLeaf = new int[numLeaves];
+		for (int i = 0; i < sites.length; i++) {
+			siteOfLeaf[sites[i].getLeaf().getIndex()] = i;
+		}
+		buffer.asIntBuffer().put(siteOfLeaf);
+		buffer.position(buffer.position() + numLeaves * Integer.BYTES);
+		for (Site site : sites) {
+			buffer.putInt(site.getCluster());
+		}
+		for (Site site : sites) {
+			buffer.putDouble(site.getX());
+		}
+		for (Site site : sites) {
+			buffer.putDouble(site.getY());
+		}
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads a geophylogeny in the binary format from the given file, which is
+	 * mapped into memory.
+	 *
+	 * @param filepath
+	 *            complete path to file
+	 * @return the read geophylogeny
+	 * @throws IOException
+	 *             if the file cannot be read or is not in the binary format
+	 */
+	public static Geophylogeny readGeophylogenyFromBinary(String filepath) throws IOException {
+		Path path = Paths.get(filepath);
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Binary geophylogeny too large: " + filepath);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a binary geophylogeny: " + filepath);
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary geophylogeny version " + version + ": " + filepath);
+		}
+		int mapWidth = buffer.getInt();
+		int mapHeight = buffer.getInt();
+		int leaderTypeOrdinal = buffer.getInt();
+		int numClusters = buffer.getInt();
+		int numLeaves = buffer.getInt();
+		int root = buffer.getInt();
+		int numSites = buffer.getInt();
+		int titleLength = buffer.getInt();
+		if (leaderTypeOrdinal < 0 || leaderTypeOrdinal >= GeophylogenyLeaderType.values().length) {
+			throw new IOException("Invalid leader type " + leaderTypeOrdinal + ": " + filepath);
+		}
+		if (numLeaves < 1 || numClusters < 0 || numSites != numLeaves || titleLength < -1) {
+			throw new IOException("Invalid counts (leaves " + numLeaves + ", sites " + numSites + ", clusters "
+					+ numClusters + ", title length " + titleLength + "): " + filepath);
+		}
+		GeophylogenyLeaderType leaderType = GeophylogenyLeaderType.values()[leaderTypeOrdinal];
+
+		String title = null;
+		if (titleLength >= 0) {
+			checkRemaining(buffer, titleLength, "title", filepath);
+			byte[] titleBytes = new byte[titleLength];
+			buffer.get(titleBytes);
+			title = new String(titleBytes, StandardCharsets.UTF_8);
+		}
+
+		checkRemaining(buffer, 2L * (2L * numLeaves - 1) * Integer.BYTES, "children", filepath);
+		int numVertices = 2 * numLeaves - 1;
+		int[] leftChild = getInts(buffer, numVertices);
+		int[] rightChild = getInts(buffer, numVertices);
+		checkRemaining(buffer, (long) numLeaves * Integer.BYTES, "sites of leaves", filepath);
+		int[] siteOfLeaf = getInts(buffer, numLeaves);
+		checkRemaining(buffer, (long) numSites * Integer.BYTES, "clusters", filepath);
+		int[] cluster = getInts(buffer, numSites);
+		checkRemaining(buffer, 2L * numSites * Double.BYTES, "site coordinates", filepath);
+		double[] x = getDoubles(buffer, numSites);
+		double[] y = getDoubles(buffer, numSites);
+
+		checkTree(root, leftChild, rightChild, numLeaves, filepath);
+		boolean[] hasLeaf = new boolean[numSites];
+		for (int i = 0; i < numLeaves; i++) {
+			if (siteOfLeaf[i] < 0 || siteOfLeaf[i] >= numSites || hasLeaf[siteOfLeaf[i]]) {
+				throw new IOException("Invalid site " + siteOfLeaf[i] + " of leaf " + i + ": " + filepath);
+			}
+			hasLeaf[siteOfLeaf[i]] = true;
+		}
+		if (numClusters > 1) {
+			for (int i = 0; i < numSites; i++) {
+				if (cluster[i] < 0 || cluster[i] >= numClusters) {
+					throw new IOException("Invalid cluster " + cluster[i] + " of site " + i + ": " + filepath);
+				}
+			}
+		}
+
+		Tree tree = new Tree(createVertices(root, leftChild, rightChild), numLeaves);
+
+		Site[] sites = new Site[numSites];
+		for (int i = 0; i < numSites; i++) {
+			sites[i] = new Site(x[i], y[i]);
+			sites[i].setCluster(cluster[i]);
+		}
+		Vertex[] leaves = tree.getLeavesInIndexOrder();
+		for (int i = 0; i < leaves.length; i++) {
+			sites[siteOfLeaf[i]].setLeaf(leaves[i]);
+		}
+
+		Geophylogeny geophylogeny = new Geophylogeny(tree, sites, mapWidth, mapHeight, title, leaderType);
+
+		if (numClusters > 1) {
+			int[] clusterOfLeaf = new int[numLeaves];
+			for (int i = 0; i < leaves.length; i++) {
+				clusterOfLeaf[i] = cluster[siteOfLeaf[i]];
+			}
+			geophylogeny.setClustersByMapping(clusterOfLeaf);
+		}
+
+		return geophylogeny;
+	}
+
+	/**
+	 * Converts a geophylogeny json file to the binary format.
+	 *
+	 * @param jsonFilepath
+	 *            complete path to the json file
+	 * @param binaryFilepath
+	 *            complete path for the binary file
+	 * @throws IOException
+	 *             if the binary file cannot be written
+	 */
+	public static void convertJSONToBinary(String jsonFilepath, String binaryFilepath) throws IOException {
+		Geophylogeny geophylogeny = GeophylogenyIO.readGeophylogenyFromJSON(jsonFilepath);
+		if (geophylogeny == null) {
+			throw new IOException("Couldn't read JSON file: " + jsonFilepath);
+		}
+		writeGeophylogenyToBinary(geophylogeny, binaryFilepath);
+	}
+
+	private static void checkRemaining(ByteBuffer buffer, long bytes, String section, String filepath)
+			throws IOException {
+		if (buffer.remaining() < bytes) {
+			throw new IOException("Truncated binary geophylogeny, missing " + section + ": " + filepath);
+		}
+	}
+
+	/**
+	 * Checks that the children describe a binary tree on the vertices with the
+	 * given root, where the leaves are the vertices 0, ..., n-1.
+	 */
+	private static void checkTree(int root, int[] leftChild, int[] rightChild, int numLeaves, String filepath)
+			throws IOException {
+		int numVertices = leftChild.length;
+		if (root < 0 || root >= numVertices) {
+			throw new IOException("Invalid root " + root + ": " + filepath);
+		}
+		boolean[] hasParent = new boolean[numVertices];
+		for (int vertex = 0; vertex < numVertices; vertex++) {
+			int left = leftChild[vertex];
+			int right = rightChild[vertex];
+			boolean valid = (vertex < numLeaves) ? (left == -1 && right == -1)
+					: (left >= 0 && left < numVertices && right >= 0 && right < numVertices && left != right
+							&& !hasParent[left] && !hasParent[right] && left != root && right != root);
+			if (!valid) {
+				throw new IOException("Invalid children " + left + " and " + right + " of vertex " + vertex
+						+ ": " + filepath);
+			}
+			if (vertex >= numLeaves) {
+				hasParent[left] = true;
+				hasParent[right] = true;
+			}
+		}
+
+		// with one parent per vertex but the root, a vertex is unreachable iff it is on a cycle
+		int[] stack = new int[numVertices];
+		int size = 0;
+		int numReached = 0;
+		stack[size++] = root;
+		while (size > 0) {
+			int vertex = stack[--size];
+			numReached++;
+			if (vertex >= numLeaves) {
+				stack[size++] = leftChild[vertex];
+				stack[size++] = rightChild[vertex];
+			}
+		}
+		if (numReached != numVertices) {
+			throw new IOException("Children do not form a tree: " + filepath);
+		}
+	}
+
+	private static int[] getInts(ByteBuffer buffer, int length) {
+		int[] values = new int[length];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + length * Integer.BYTES);
+		return values;
+	}
+
+	private static double[] getDoubles(ByteBuffer buffer, int length) {
+		double[] values = new double[length];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + length * Double.BYTES);
+		return values;
+	}
+
+	/**
+	 * Creates the vertices in post-order with an explicit stack, so that
+	 * children are created before their parents, and returns the root.
+	 */
+	private static Vertex createVertices(int root, int[] leftChild, int[] rightChild) {
+		Vertex[] vertices = new Vertex[leftChild.length];
+		int[] stack = new int[leftChild.length];
+		int size = 0;
+		stack[size++] = root;
+		while (size > 0) {
+			int vertex = stack[size - 1];
+			if (leftChild[vertex] < 0) {
+				vertices[vertex] = new Vertex(vertex + 1);
+				size--;
+			} else if (vertices[leftChild[vertex]] == null) {
+				stack[size++] = rightChild[vertex];
+				stack[size++] = leftChild[vertex];
+			} else {
+				vertices[vertex] = new Vertex(vertex + 1, vertices[leftChild[vertex]],
+						vertices[rightChild[vertex]]);
+				size--;
+			}
+		}
+		return vertices[root];
+	}
+}
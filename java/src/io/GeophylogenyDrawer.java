@@ -1,5 +1,17 @@
 package io;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -17,6 +29,18 @@ import model.Site;
  * This class provides a method to draw a given geophylogeny with a specified
  * (or no) leader type into an svg.
  *
+ * By default, the svg is streamed to the file with an {@link SVGWriter}; the
+ * DOM document path gives the same file and can be used with
+ * {@link #setUseDOM(boolean)}. Streamed files with names ending with ".svgz"
+ * are gzip-compressed.
+ *
+ * For huge trees, the streamed svg can be drawn with less detail, see
+ * {@link #setLevelOfDetail(double, double)}: leaders whose ends lie in the
+ * same small cells are bundled into one thicker leader, site markers, edges and
+ * vertices in the same cells are drawn once, and labels that would be closer
+ * than a given spacing are left out. In dense regions, the size of the svg
+ * then no longer grows with the number of leaves.
+ *
  * @author Jonathan Klawitter
  */
 public class GeophylogenyDrawer {
@@ -38,11 +62,21 @@ public class GeophylogenyDrawer {
 	public static final double LABEL_OFFSET_TREE = -6;
 	public static final double LABEL_OFFSET_SITES = 10;
 	public static final double TREE_OFFSET = -16;
+	public static final double DEFAULT_BUNDLE_WIDTH = 4;
+	public static final double DEFAULT_LABEL_SPACING = 12;
+	public static final int LEVEL_OF_DETAIL_DECIMALS = 1;
 
 	// document
 	private Document doc;
 	private Element svg;
 	private String fileName;
+	private boolean useDOM = false;
+	private int coordinateDecimals = -1;
+
+	// level of detail
+	private boolean levelOfDetail = false;
+	private double bundleWidth;
+	private double labelSpacing;
 
 	// basic model
 	private Geophylogeny geophylogeny;
@@ -79,12 +113,6 @@ public class GeophylogenyDrawer {
 		this.yZero = treeCanvasHeight;
 
 		this.fileName = filename;
-		try {
-			this.doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-			this.svg = SVGUtil.setupSVG(doc, svgWidth, svgHeight);
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		}
 	}
 
 	public GeophylogenyDrawer setLeaderType(Leader.GeophylogenyLeaderType leaderType) {
@@ -92,8 +120,73 @@ public class GeophylogenyDrawer {
 		return this;
 	}
 
+	/**
+	 * Sets whether the svg is built as DOM document before writing it instead
+	 * of being streamed. Drawings with level of detail are always streamed, so
+	 * this has no effect after {@link #setLevelOfDetail(boolean)} with true.
+	 */
+	public GeophylogenyDrawer setUseDOM(boolean useDOM) {
+		this.useDOM = useDOM;
+		return this;
+	}
+
+	/**
+	 * Sets the number of decimals coordinates are rounded to when streaming;
+	 * -1 (default) writes them exactly as the DOM path.
+	 */
+	public GeophylogenyDrawer setCoordinateDecimals(int coordinateDecimals) {
+		this.coordinateDecimals = coordinateDecimals;
+		return this;
+	}
+
+	/**
+	 * Sets whether the streamed svg is drawn with less detail, with the default
+	 * bundle width and label spacing.
+	 */
+	public GeophylogenyDrawer setLevelOfDetail(boolean levelOfDetail) {
+		return levelOfDetail ? setLevelOfDetail(DEFAULT_BUNDLE_WIDTH, DEFAULT_LABEL_SPACING)
+				: setLevelOfDetail(0, 0);
+	}
+
+	/**
+	 * Sets the streamed svg to be drawn with less detail; both 0 draws all
+	 * details again. Coordinates are then rounded to
+	 * {@value #LEVEL_OF_DETAIL_DECIMALS} decimal unless set otherwise.
+	 *
+	 * @param bundleWidth
+	 *            leaders whose ends lie in the same cells of this width are
+	 *            drawn as one thicker leader; site markers, edges and vertices
+	 *            in the same cells are drawn once; 0 bundles only identical
+	 *            ones
+	 * @param labelSpacing
+	 *            minimum distance of leaf labels, and size of the cells of which
+	 *            each gets at most one site label
+	 */
+	public GeophylogenyDrawer setLevelOfDetail(double bundleWidth, double labelSpacing) {
+		this.levelOfDetail = bundleWidth > 0 || labelSpacing > 0;
+		this.bundleWidth = bundleWidth;
+		this.labelSpacing = labelSpacing;
+		return this;
+	}
+
 	public void drawGeophylogeny() {
 //		System.out.println("> draw geophylogeny");
+		if (!useDOM || levelOfDetail) {
+			try (OutputStream out = openSVGFile(fileName)) {
+				drawGeophylogeny(out);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		try {
+			this.doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			this.svg = SVGUtil.setupSVG(doc, svgWidth, svgHeight);
+		} catch (ParserConfigurationException e) {
+			e.printStackTrace();
+			return;
+		}
 
 		// draw leaders or labels
 		if (leaderType.equals(Leader.GeophylogenyLeaderType.NONE)) {
@@ -296,6 +389,391 @@ public class GeophylogenyDrawer {
 		}
 	}
 
+	/**
+	 * Streams the svg to the given stream, with the same layers as the DOM
+	 * path; attributes are written in the order in which the DOM serializer
+	 * writes them, that is, xmlns first and then alphabetically. The stream is
+	 * closed afterwards.
+	 *
+	 * @param out
+	 *            stream to write the svg to
+	 * @throws IOException
+	 *             if the svg cannot be written
+	 */
+	public void drawGeophylogeny(OutputStream out) throws IOException {
+		int decimals = (levelOfDetail && coordinateDecimals < 0) ? LEVEL_OF_DETAIL_DECIMALS
+				: coordinateDecimals;
+		try (SVGWriter writer = new SVGWriter(out, decimals)) {
+			writer.startElement("svg").attribute("xmlns", "http://www.w3.org/2000/svg")
+					.attribute("height", svgHeight + 120).attribute("version", "1.1")
+					.attribute("viewport", "0 0 " + svgWidth + " " + svgHeight)
+					.attribute("width", svgWidth + 50);
+
+			if (levelOfDetail) {
+				writeCollapsedLabels(writer);
+			} else {
+				writeLabels(writer);
+			}
+			if (!leaderType.equals(Leader.GeophylogenyLeaderType.NONE)) {
+				if (levelOfDetail) {
+					writeLeaderBundles(writer);
+				} else {
+					writeLeaders(writer);
+				}
+			}
+			writeBackground(writer);
+			if (levelOfDetail) {
+				writeSiteBundles(writer);
+			} else {
+				writeSites(writer);
+			}
+
+			// the edges are drawn first but need the y-coordinates of the vertices
+			for (Vertex vertex : tree.getVertices()) {
+				vertex.setY(getYByHeight(vertex.getHeight()) + TREE_OFFSET);
+			}
+			if (levelOfDetail) {
+				writeEdgeBundles(writer);
+				writeVertexBundles(writer);
+			} else {
+				writeEdges(writer);
+				writeVertices(writer);
+			}
+
+			writer.endElement();
+		}
+	}
+
+	private void writeBackground(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "backgroundLayer");
+		writer.startElement("rect").attribute("fill", "none").attribute("height", mapHeight)
+				.attribute("stroke", RECT_STROKE_COLOR).attribute("stroke-width", RECT_STROKE_WIDTH)
+				.attribute("width", mapWidth).attribute("x", xZero).attribute("y", yZero).endElement();
+		writer.endElement();
+	}
+
+	private void writeLeaders(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "leaderLayer");
+		for (Site site : geophylogeny.getSites()) {
+			double xSite = convertMapXToSVGX(site.getX());
+			double ySite = convertMapYToSVGY(site.getY());
+			double xLeaf = xZero + site.getLeaf().getX();
+			double yLeaf = yZero;
+
+			writer.startElement("path").startAttribute("d");
+			writer.text("M").number(xSite).text(",").number(ySite).text(" ");
+			switch (this.leaderType) {
+			case PO:
+				writer.number(xLeaf).text(",").number(ySite).text(" ").number(xLeaf).text(",")
+						.number(yLeaf);
+				break;
+			case S:
+				writer.number(xLeaf).text(",").number(yLeaf);
+				break;
+			default:
+				throw new IllegalArgumentException("Unexpected leader type value: " + this.leaderType);
+			}
+			writer.endAttribute().attribute("fill", "none").attribute("stroke", LEADER_COLOR)
+					.attribute("stroke-linecap", "round").attribute("stroke-opacity", "0.5")
+					.attribute("stroke-width", LEADER_STROKE_WIDTH).endElement();
+		}
+		writer.endElement();
+	}
+
+	private void writeLabels(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "labelLayer");
+		double yLeafLabel = getYByHeight(0) + LABEL_OFFSET_TREE;
+		for (Site site : geophylogeny.getSites()) {
+			String label = site.getID() + "";
+			writeLabel(writer, convertMapXToSVGX(site.getX()),
+					convertMapYToSVGY(site.getY()) + LABEL_OFFSET_SITES, label);
+			writeLabel(writer, xZero + site.getLeaf().getX(), yLeafLabel, label);
+		}
+		writer.endElement();
+	}
+
+	private void writeLabel(SVGWriter writer, double x, double y, String label) {
+		writer.startElement("text").attribute("dominant-baseline", "middle")
+				.attribute("style", "font-size: smaller;").attribute("text-anchor", "middle")
+				.attribute("x", x).attribute("y", y).text(label).endElement();
+	}
+
+	private void writeSites(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "siteLayer");
+		double offset = MARKER_SIZE / 2;
+		for (Site site : geophylogeny.getSites()) {
+			double x = convertMapXToSVGX(site.getX());
+			double y = convertMapYToSVGY(site.getY());
+			String strokeColor = geophylogeny.hasClusters() ? CLUSTER_COLORS[site.getCluster()]
+					: "black";
+
+			writer.startElement("path").startAttribute("d");
+			writer.text("M").number(x - offset).text(",").number(y - offset).text(" ")
+					.number(x + offset).text(",").number(y + offset).text(" M ").number(x - offset)
+					.text(",").number(y + offset).text(" ").number(x + offset).text(",")
+					.number(y - offset);
+			writer.endAttribute().attribute("fill", "none").attribute("id", generateSVGIdOfSite(site))
+					.attribute("stroke", strokeColor).attribute("stroke-width", MARKER_STROKE_WIDTH)
+					.endElement();
+		}
+		writer.endElement();
+	}
+
+	private void writeEdges(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "edgeLayer");
+		for (Vertex vertex : tree.getVertices()) {
+			if (vertex.hasParent()) {
+				Vertex parent = vertex.getParent();
+				double x1 = xZero + vertex.getX();
+				double x2 = xZero + parent.getX();
+				double y1 = vertex.getY();
+				double y2 = parent.getY();
+
+				writer.startElement("path").startAttribute("d");
+				writer.text("M").number(x1).text(",").number(y1).text(" ").number(x1).text(",")
+						.number(y2).text(" ").number(x2).text(",").number(y2);
+				writer.endAttribute().attribute("fill", "none").attribute("stroke", "black")
+						.attribute("stroke-width", EDGE_STROKE_WIDTH).endElement();
+			}
+		}
+		writer.endElement();
+	}
+
+	private void writeVertices(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "vertexLayer");
+		for (Vertex vertex : tree.getVertices()) {
+			String fillColor;
+			if (vertex.isLeaf()) {
+				fillColor = geophylogeny.hasClusters()
+						? CLUSTER_COLORS[geophylogeny.getClusterOfVertex(vertex)]
+						: "white";
+			} else {
+				fillColor = "black";
+			}
+			writer.startElement("circle").attribute("cx", xZero + vertex.getX())
+					.attribute("cy", vertex.getY()).attribute("fill", fillColor)
+					.attribute("id", generateSVGIdOfVertex(vertex)).attribute("r", VERTEX_RADIUS)
+					.attribute("stroke", "black").attribute("stroke-width", VERTEX_STROKE_WIDTH)
+					.endElement();
+		}
+		writer.endElement();
+	}
+
+	/**
+	 * Opens the given file for an svg, gzip-compressed if its name ends with
+	 * ".svgz".
+	 */
+	static OutputStream openSVGFile(String filename) throws IOException {
+		OutputStream out = new FileOutputStream(filename);
+		if (filename.endsWith(".svgz")) {
+			return new GZIPOutputStream(out, 1 << 16);
+		}
+		return new BufferedOutputStream(out);
+	}
+
+	private void writeCollapsedLabels(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "labelLayer").attribute("style", "font-size: smaller;")
+				.attribute("text-anchor", "middle");
+
+		// at most one site label per cell
+		Site[] sites = geophylogeny.getSites();
+		Site[] siteOfLeaf = new Site[tree.getNumberOfLeaves()];
+		Set<Cell> occupiedCells = new HashSet<Cell>();
+		for (Site site : sites) {
+			siteOfLeaf[site.getLeaf().getIndex()] = site;
+			double x = convertMapXToSVGX(site.getX());
+			double y = convertMapYToSVGY(site.getY()) + LABEL_OFFSET_SITES;
+			if (labelSpacing <= 0 || occupiedCells.add(getCell(x, y, 0, 0, labelSpacing))) {
+				writeCollapsedLabel(writer, x, y, site.getID());
+			}
+		}
+
+		// leaf labels from left to right, leaving out those too close to the last
+		double y = getYByHeight(0) + LABEL_OFFSET_TREE;
+		double lastX = Double.NEGATIVE_INFINITY;
+		for (Vertex leaf : tree.getLeavesInOrder()) {
+			double x = xZero + leaf.getX();
+			if (x - lastX >= labelSpacing) {
+				writeCollapsedLabel(writer, x, y, siteOfLeaf[leaf.getIndex()].getID());
+				lastX = x;
+			}
+		}
+		writer.endElement();
+	}
+
+	private void writeCollapsedLabel(SVGWriter writer, double x, double y, int label) {
+		writer.startElement("text").attribute("dominant-baseline", "middle").attribute("x", x)
+				.attribute("y", y).text(label + "").endElement();
+	}
+
+	/**
+	 * Bundles leaders whose site end and leaf end lie in the same cells; each
+	 * bundle is drawn with its first leader and a stroke width that grows with
+	 * the logarithm of its size. Bundles of the same width share one path.
+	 */
+	private void writeLeaderBundles(SVGWriter writer) {
+		Map<Cell, double[]> bundles = new LinkedHashMap<Cell, double[]>();
+		for (Site site : geophylogeny.getSites()) {
+			double xSite = convertMapXToSVGX(site.getX());
+			double ySite = convertMapYToSVGY(site.getY());
+			double xLeaf = xZero + site.getLeaf().getX();
+			Cell key = getCell(xSite, ySite, xLeaf, 0, bundleWidth);
+			double[] bundle = bundles.get(key);
+			if (bundle == null) {
+				bundles.put(key, new double[] { xSite, ySite, xLeaf, 1 });
+			} else {
+				bundle[3]++;
+			}
+		}
+
+		writer.startElement("g").attribute("id", "leaderLayer").attribute("fill", "none")
+				.attribute("stroke", LEADER_COLOR).attribute("stroke-linecap", "round")
+				.attribute("stroke-opacity", "0.5");
+		double yLeaf = yZero;
+		double strokeWidth = Double.parseDouble(LEADER_STROKE_WIDTH);
+		List<List<double[]>> sizeClasses = groupBySizeClass(bundles.values());
+		for (int sizeClass = 0; sizeClass < sizeClasses.size(); sizeClass++) {
+			List<double[]> widthClass = sizeClasses.get(sizeClass);
+			if (widthClass.isEmpty()) {
+				continue;
+			}
+			writer.startElement("path").startAttribute("d");
+			for (double[] bundle : widthClass) {
+				writer.text("M").number(bundle[0]).text(",").number(bundle[1]).text(" ");
+				if (leaderType == Leader.GeophylogenyLeaderType.PO) {
+					writer.number(bundle[2]).text(",").number(bundle[1]).text(" ");
+				}
+				writer.number(bundle[2]).text(",").number(yLeaf);
+			}
+			writer.endAttribute().attribute("stroke-width", strokeWidth + sizeClass).endElement();
+		}
+		writer.endElement();
+	}
+
+	/**
+	 * Draws one marker per cluster and cell, with one path per cluster.
+	 */
+	private void writeSiteBundles(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "siteLayer").attribute("fill", "none")
+				.attribute("stroke-width", MARKER_STROKE_WIDTH);
+		double offset = MARKER_SIZE / 2;
+		int numberOfColors = geophylogeny.hasClusters() ? CLUSTER_COLORS.length : 1;
+		for (int color = 0; color < numberOfColors; color++) {
+			Set<Cell> occupiedCells = new HashSet<Cell>();
+			boolean started = false;
+			for (Site site : geophylogeny.getSites()) {
+				if (geophylogeny.hasClusters() && site.getCluster() != color) {
+					continue;
+				}
+				double x = convertMapXToSVGX(site.getX());
+				double y = convertMapYToSVGY(site.getY());
+				if (!occupiedCells.add(getCell(x, y, 0, 0, bundleWidth))) {
+					continue;
+				}
+				if (!started) {
+					writer.startElement("path").attribute("stroke",
+							geophylogeny.hasClusters() ? CLUSTER_COLORS[color] : "black");
+					writer.startAttribute("d");
+					started = true;
+				}
+				writer.text("M").number(x - offset).text(",").number(y - offset).text(" ")
+						.number(x + offset).text(",").number(y + offset).text(" M ").number(x - offset)
+						.text(",").number(y + offset).text(" ").number(x + offset).text(",")
+						.number(y - offset);
+			}
+			if (started) {
+				writer.endAttribute().endElement();
+			}
+		}
+		writer.endElement();
+	}
+
+	/**
+	 * Draws one edge per cells of its child end and the bend, all in one path.
+	 */
+	private void writeEdgeBundles(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "edgeLayer");
+		writer.startElement("path").startAttribute("d");
+		Set<Cell> occupiedCells = new HashSet<Cell>();
+		for (Vertex vertex : tree.getVertices()) {
+			if (vertex.hasParent()) {
+				Vertex parent = vertex.getParent();
+				double x1 = xZero + vertex.getX();
+				double x2 = xZero + parent.getX();
+				double y1 = vertex.getY();
+				double y2 = parent.getY();
+				if (occupiedCells.add(getCell(x1, y1, x2, y2, bundleWidth))) {
+					writer.text("M").number(x1).text(",").number(y1).text(" ").number(x1).text(",")
+							.number(y2).text(" ").number(x2).text(",").number(y2);
+				}
+			}
+		}
+		writer.endAttribute().attribute("fill", "none").attribute("stroke", "black")
+				.attribute("stroke-width", EDGE_STROKE_WIDTH).endElement();
+		writer.endElement();
+	}
+
+	/**
+	 * Draws one vertex per cell and fill color, without ids.
+	 */
+	private void writeVertexBundles(SVGWriter writer) {
+		writer.startElement("g").attribute("id", "vertexLayer").attribute("stroke", "black")
+				.attribute("stroke-width", VERTEX_STROKE_WIDTH);
+		// by fill color: -1 black, clusters, and CLUSTER_COLORS.length white
+		List<Set<Cell>> occupiedCells = new ArrayList<Set<Cell>>();
+		for (int i = 0; i <= CLUSTER_COLORS.length + 1; i++) {
+			occupiedCells.add(new HashSet<Cell>());
+		}
+		for (Vertex vertex : tree.getVertices()) {
+			int fill = -1;
+			if (vertex.isLeaf()) {
+				fill = geophylogeny.hasClusters() ? geophylogeny.getClusterOfVertex(vertex)
+						: CLUSTER_COLORS.length;
+			}
+			double x = xZero + vertex.getX();
+			if (occupiedCells.get(fill + 1).add(getCell(x, vertex.getY(), 0, 0, bundleWidth))) {
+				String fillColor = (fill < 0) ? "black"
+						: (fill < CLUSTER_COLORS.length) ? CLUSTER_COLORS[fill] : "white";
+				writer.startElement("circle").attribute("cx", x).attribute("cy", vertex.getY())
+						.attribute("fill", fillColor).attribute("r", VERTEX_RADIUS).endElement();
+			}
+		}
+		writer.endElement();
+	}
+
+	/**
+	 * Groups the given bundles {x, y, x, size} by the binary logarithm of their
+	 * size.
+	 */
+	private static List<List<double[]>> groupBySizeClass(Iterable<double[]> bundles) {
+		List<List<double[]>> classes = new ArrayList<List<double[]>>();
+		for (double[] bundle : bundles) {
+			int sizeClass = 31 - Integer.numberOfLeadingZeros((int) bundle[3]);
+			while (classes.size() <= sizeClass) {
+				classes.add(new ArrayList<double[]>());
+			}
+			classes.get(sizeClass).add(bundle);
+		}
+		return classes;
+	}
+
+	/**
+	 * Returns the cell of the given point (x, y, z, w) in a grid of the given
+	 * cell width; a width of 0 only maps equal points to the same cell.
+	 */
+	private static Cell getCell(double x, double y, double z, double w, double cellWidth) {
+		if (cellWidth <= 0) {
+			return new Cell(Double.doubleToLongBits(x), Double.doubleToLongBits(y),
+					Double.doubleToLongBits(z), Double.doubleToLongBits(w));
+		}
+		return new Cell((long) Math.floor(x / cellWidth), (long) Math.floor(y / cellWidth),
+				(long) Math.floor(z / cellWidth), (long) Math.floor(w / cellWidth));
+	}
+
+	/** Cell of a point (x, y, z, w), or the bits of the point itself. */
+	private record Cell(long x, long y, long z, long w) {
+	}
+
 	private double getYByHeight(double height) {
 		return yZero - height * yStepTree;
 	}
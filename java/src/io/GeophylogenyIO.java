@@ -3,8 +3,16 @@ package io;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.json.*;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
 
 import model.Tree;
 import model.Vertex;
@@ -40,7 +48,8 @@ public class GeophylogenyIO {
 	public static final String CLUSTER = "cluster";
 
 	/**
-	 * Writes a given geophylogeny to a json file at the given filepath.
+	 * Writes a given geophylogeny to a json file at the given filepath. The
+	 * json is streamed to the file without building it in memory first.
 	 * 
 	 * @param geophylogeny
 	 *            geophylogeny to be stored as json
@@ -48,104 +57,161 @@ public class GeophylogenyIO {
 	 *            complete path "../name.json" for the output file
 	 */
 	public static void writeGeophylogenyToJSON(Geophylogeny geophylogeny, String filepath) {
-		JsonObject jsonTree = writeJSONVertex(geophylogeny.getTree().getRoot());
-		JsonArray jsonSites = writeJSONSites(geophylogeny.getSites());
-		JsonObject jsonGeophylogeny = Json.createObjectBuilder()//
-				.add(TITLE, geophylogeny.getName())//
-				// .add(DESCRIPTION, geophylogeny.getDescription)
-				.add(MAP_WIDTH, geophylogeny.getMapWidth())//
-				.add(MAP_HEIGHT, geophylogeny.getMapHeight())//
-				.add(NUM_LEAVES, geophylogeny.getTree().getNumberOfLeaves())//
-				.add(TREE, jsonTree)//
-				.add(NUM_SITES, geophylogeny.getSites().length)//
-				.add(SITES, jsonSites)//
-				.add(NUM_CLUSTERS, geophylogeny.getNumberOfClusters())//
-				.build();
-		JsonWriter writer;
+		JsonGenerator generator;
 		try {
-			writer = Json.createWriter(new FileOutputStream(filepath));
-			writer.writeObject(jsonGeophylogeny);
-			writer.close();
+			generator = Json.createGenerator(new FileOutputStream(filepath));
 		} catch (FileNotFoundException e) {
 			System.err.println("Error trying to output geophylogeny as json to " + filepath);
+			return;
 		}
+
+		generator.writeStartObject()//
+				.write(TITLE, geophylogeny.getName())//
+				// .write(DESCRIPTION, geophylogeny.getDescription)
+				.write(MAP_WIDTH, geophylogeny.getMapWidth())//
+				.write(MAP_HEIGHT, geophylogeny.getMapHeight())//
+				.write(NUM_LEAVES, geophylogeny.getTree().getNumberOfLeaves());
+		writeJSONTree(generator, geophylogeny.getTree());
+		generator.write(NUM_SITES, geophylogeny.getSites().length);
+		writeJSONSites(generator, geophylogeny.getSites());
+		generator.write(NUM_CLUSTERS, geophylogeny.getNumberOfClusters())//
+				.writeEnd();
+		generator.close();
 	}
 
-	private static JsonObject writeJSONVertex(Vertex vertex) {
-		JsonObject jsonVertex = null;
-		if (vertex.isLeaf()) {
-			jsonVertex = Json.createObjectBuilder()//
-					.add(IS_LEAF, true)//
-					.add(ID, vertex.getID() - 1)//
-					.add(LABEL, (vertex.getID() - 1) + "")//
-					.add(SITE_ID, vertex.getID() - 1)//
-					.build();
-		} else {
-			JsonObject jsonLeftChild = writeJSONVertex(vertex.getLeftChild());
-			JsonObject jsonRightChild = writeJSONVertex(vertex.getRightChild());
-			jsonVertex = Json.createObjectBuilder()//
-					.add(IS_LEAF, false)//
-					.add(ID, vertex.getID() - 1)//
-					.add(LEFT_CHILD, jsonLeftChild)//
-					.add(RIGHT_CHILD, jsonRightChild)//
-					.build();
+	/**
+	 * Writes the vertices of the given tree in pre-order with an explicit
+	 * stack, where null marks the end of an inner vertex.
+	 */
+	private static void writeJSONTree(JsonGenerator generator, Tree tree) {
+		Vertex[] stack = new Vertex[2 * tree.getNumberOfVertices()];
+		String[] stackKey = new String[stack.length];
+		int size = 0;
+		stack[size] = tree.getRoot();
+		stackKey[size] = TREE;
+		size++;
+		while (size > 0) {
+			size--;
+			Vertex vertex = stack[size];
+			if (vertex == null) {
+				generator.writeEnd();
+				continue;
+			}
+
+			generator.writeStartObject(stackKey[size])//
+					.write(IS_LEAF, vertex.isLeaf())//
+					.write(ID, vertex.getID() - 1);
+			if (vertex.isLeaf()) {
+				generator.write(LABEL, (vertex.getID() - 1) + "")//
+						.write(SITE_ID, vertex.getID() - 1)//
+						.writeEnd();
+			} else {
+				stack[size] = null;
+				size++;
+				stack[size] = vertex.getRightChild();
+				stackKey[size] = RIGHT_CHILD;
+				size++;
+				stack[size] = vertex.getLeftChild();
+				stackKey[size] = LEFT_CHILD;
+				size++;
+			}
 		}
-		return jsonVertex;
 	}
 
-	private static JsonArray writeJSONSites(Site[] sites) {
-		JsonArrayBuilder jsonSitesBuilder = Json.createArrayBuilder();
+	private static void writeJSONSites(JsonGenerator generator, Site[] sites) {
+		generator.writeStartArray(SITES);
 		for (int i = 0; i < sites.length; i++) {
-			JsonObject jsonSite = Json.createObjectBuilder()//
-					.add(X, sites[i].getX()).add(Y, sites[i].getY())//
-					.add(CLUSTER, sites[i].getCluster())//
-					.build();
-			jsonSitesBuilder.add(jsonSite);
+			// same number format as JsonObjectBuilder.add(String, double)
+			generator.writeStartObject()//
+					.write(X, BigDecimal.valueOf(sites[i].getX()))//
+					.write(Y, BigDecimal.valueOf(sites[i].getY()))//
+					.write(CLUSTER, sites[i].getCluster())//
+					.writeEnd();
 		}
-		return jsonSitesBuilder.build();
+		generator.writeEnd();
 	}
 
 	/**
-	 * Read a geophylogeny from the given file.
+	 * Read a geophylogeny from the given file. The json is read as a stream of
+	 * events, from which the tree and the sites are built directly.
 	 * 
 	 * @param filepath
 	 *            complete path to file
-	 * @return the read geophylogeny
+	 * @return the read geophylogeny, or null if the file was not found
 	 */
 	public static Geophylogeny readGeophylogenyFromJSON(String filepath) {
-		JsonObject jsonGeophylogeny = null;
+		InputStream in;
 		try {
-			JsonReader reader = Json.createReader(new FileInputStream(filepath));
-			jsonGeophylogeny = reader.readObject();
-			reader.close();
+			in = new FileInputStream(filepath);
 		} catch (FileNotFoundException e) {
 			System.err.println(
 					"Couldn't read JSON file to extract geophylogeny, because file not found: "
 							+ filepath);
+			return null;
 		}
+		return readGeophylogenyFromJSON(in);
+	}
 
-		String title = jsonGeophylogeny.getString(TITLE);
-		// String description = jsonGeophylogeny.getString(DESCRIPTION);
-		int numLeaves = jsonGeophylogeny.getInt(NUM_LEAVES);
-		int mapWidth = jsonGeophylogeny.getInt(MAP_WIDTH);
-		int mapHeight = jsonGeophylogeny.getInt(MAP_HEIGHT);
+	/**
+	 * Read a geophylogeny from the given stream of json, e.g. an entry of an
+	 * archive, which is closed afterwards.
+	 * 
+	 * @param in
+	 *            stream of json
+	 * @return the read geophylogeny
+	 */
+	public static Geophylogeny readGeophylogenyFromJSON(InputStream in) {
+		String title = null;
+		int mapWidth = 0;
+		int mapHeight = 0;
+		int numClusters = 0;
+		int numLeaves = 0;
+		JsonLeafSites leafSites = new JsonLeafSites();
+		Vertex root = null;
+		ArrayList<Site> siteList = null;
 
-		JsonObject jsonTree = jsonGeophylogeny.getJsonObject(TREE);
-		int[] siteOfLeaf = new int[numLeaves];
-		Vertex root = parseJsonVertex(jsonTree, siteOfLeaf);
-		Tree tree = new Tree(root, numLeaves);
+		// closes the stream also if the json or the tree is malformed
+		try (JsonParser parser = Json.createParser(in)) {
+			parser.next(); // START_OBJECT
+			while (parser.next() == Event.KEY_NAME) {
+				String key = parser.getString();
+				Event event = parser.next();
+				switch (key) {
+				case TITLE:
+					title = parser.getString();
+					break;
+				case MAP_WIDTH:
+					mapWidth = parser.getInt();
+					break;
+				case MAP_HEIGHT:
+					mapHeight = parser.getInt();
+					break;
+				case NUM_CLUSTERS:
+					numClusters = parser.getInt();
+					break;
+				case NUM_LEAVES:
+					numLeaves = parser.getInt();
+					break;
+				case TREE:
+					root = parseJsonTree(parser, leafSites);
+					break;
+				case SITES:
+					siteList = parseJsonSites(parser);
+					break;
+				default:
+					// e.g. num_sites, which follows from the sites
+					skipJsonValue(parser, event);
+				}
+			}
+		}
 
-		JsonArray jsonSites = jsonGeophylogeny.getJsonArray(SITES);
-		int numSites = jsonGeophylogeny.getInt(NUM_SITES);
-		Site[] sites = new Site[numSites];
-		for (int i = 0; i < numSites; i++) {
-			JsonObject jsonSite = jsonSites.getJsonObject(i);
-			double x = jsonSite.getJsonNumber(X).doubleValue();
-			double y = jsonSite.getJsonNumber(Y).doubleValue();
-			int cluster = jsonSite.getInt(CLUSTER);
-			sites[i] = new Site(x, y);
-			sites[i].setCluster(cluster);
+		// the tree may come before num_leaves, so its sites are resolved now
+		if (numLeaves == 0) {
+			numLeaves = leafSites.numberOfLeaves;
 		}
+		int[] siteOfLeaf = leafSites.siteOfLeaf;
+		Tree tree = new Tree(root, numLeaves);
+		Site[] sites = siteList.toArray(new Site[siteList.size()]);
 
 		Vertex[] leaves = tree.getLeavesInIndexOrder();
 		for (int i = 0; i < leaves.length; i++) {
@@ -154,7 +220,7 @@ public class GeophylogenyIO {
 
 		Geophylogeny geophylogeny = new Geophylogeny(tree, sites, mapWidth, mapHeight, title);
 
-		if (jsonGeophylogeny.getInt(NUM_CLUSTERS) > 1) {
+		if (numClusters > 1) {
 			int[] clusterOfLeaf = new int[numLeaves];
 			for (int i = 0; i < leaves.length; i++) {
 				clusterOfLeaf[i] = sites[siteOfLeaf[i]].getCluster();
@@ -165,15 +231,135 @@ public class GeophylogenyIO {
 		return geophylogeny;
 	}
 
-	private static Vertex parseJsonVertex(JsonObject jsonVertex, int[] siteOfLeaf) {
-		int id = jsonVertex.getInt(ID) + 1;
-		if (jsonVertex.getBoolean(IS_LEAF)) {
-			siteOfLeaf[id - 1] = jsonVertex.getInt(SITE_ID);
-			return new Vertex(id);
-		} else {
-			Vertex leftChild = parseJsonVertex(jsonVertex.getJsonObject(LEFT_CHILD), siteOfLeaf);
-			Vertex rightChild = parseJsonVertex(jsonVertex.getJsonObject(RIGHT_CHILD), siteOfLeaf);
-			return new Vertex(id, leftChild, rightChild);
+	/**
+	 * Creates the vertices of the json tree whose START_OBJECT event has just
+	 * been read. Vertices whose object has been started wait on an explicit
+	 * stack until their END_OBJECT event, so children are created before their
+	 * parents. The site of each leaf is stored in the given leaf sites.
+	 */
+	private static Vertex parseJsonTree(JsonParser parser, JsonLeafSites leafSites) {
+		ArrayDeque<JsonVertex> stack = new ArrayDeque<JsonVertex>();
+		stack.push(new JsonVertex(TREE));
+		Vertex root = null;
+		while (!stack.isEmpty()) {
+			Event event = parser.next();
+			JsonVertex jsonVertex = stack.peek();
+			if (event == Event.END_OBJECT) {
+				stack.pop();
+				Vertex vertex;
+				if (jsonVertex.isLeaf) {
+					vertex = new Vertex(jsonVertex.id + 1);
+					leafSites.add(jsonVertex.id, jsonVertex.siteId);
+				} else {
+					vertex = new Vertex(jsonVertex.id + 1, jsonVertex.leftChild,
+							jsonVertex.rightChild);
+				}
+
+				if (stack.isEmpty()) {
+					root = vertex;
+				} else if (jsonVertex.key.equals(LEFT_CHILD)) {
+					stack.peek().leftChild = vertex;
+				} else {
+					stack.peek().rightChild = vertex;
+				}
+				continue;
+			}
+
+			String key = parser.getString();
+			event = parser.next();
+			switch (key) {
+			case IS_LEAF:
+				jsonVertex.isLeaf = (event == Event.VALUE_TRUE);
+				break;
+			case ID:
+				jsonVertex.id = parser.getInt();
+				break;
+			case SITE_ID:
+				jsonVertex.siteId = parser.getInt();
+				break;
+			case LEFT_CHILD:
+			case RIGHT_CHILD:
+				stack.push(new JsonVertex(key));
+				break;
+			default:
+				skipJsonValue(parser, event);
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Creates the sites of the json array whose START_ARRAY event has just been
+	 * read.
+	 */
+	private static ArrayList<Site> parseJsonSites(JsonParser parser) {
+		ArrayList<Site> sites = new ArrayList<Site>();
+		while (parser.next() == Event.START_OBJECT) {
+			double x = 0;
+			double y = 0;
+			int cluster = 0;
+			boolean hasCluster = false;
+			while (parser.next() == Event.KEY_NAME) {
+				String key = parser.getString();
+				Event event = parser.next();
+				switch (key) {
+				case X:
+					x = parser.getBigDecimal().doubleValue();
+					break;
+				case Y:
+					y = parser.getBigDecimal().doubleValue();
+					break;
+				case CLUSTER:
+					cluster = parser.getInt();
+					hasCluster = true;
+					break;
+				default:
+					skipJsonValue(parser, event);
+				}
+			}
+			Site site = new Site(x, y);
+			if (hasCluster) {
+				site.setCluster(cluster);
+			}
+			sites.add(site);
+		}
+		return sites;
+	}
+
+	private static void skipJsonValue(JsonParser parser, Event event) {
+		if (event == Event.START_OBJECT) {
+			parser.skipObject();
+		} else if (event == Event.START_ARRAY) {
+			parser.skipArray();
+		}
+	}
+
+	/** Site ids of the leaves of a json tree, by leaf id. */
+	private static class JsonLeafSites {
+		private int[] siteOfLeaf = new int[16];
+		private int numberOfLeaves;
+
+		private void add(int leafId, int siteId) {
+			if (leafId >= siteOfLeaf.length) {
+				siteOfLeaf = Arrays.copyOf(siteOfLeaf, Math.max(2 * siteOfLeaf.length, leafId + 1));
+			}
+			siteOfLeaf[leafId] = siteId;
+			numberOfLeaves++;
+		}
+	}
+
+	/** A json vertex whose object has been started but not yet ended. */
+	private static class JsonVertex {
+		/** Key of this vertex in its parent object. */
+		private final String key;
+		private boolean isLeaf;
+		private int id;
+		private int siteId;
+		private Vertex leftChild;
+		private Vertex rightChild;
+
+		private JsonVertex(String key) {
+			this.key = key;
 		}
 	}
 }
@@ -0,0 +1,298 @@
+package io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * This class writes an svg (or any xml) document element by element straight
+ * to a stream, instead of building a DOM document first. The output is the
+ * same as serializing the equivalent DOM document with {@link SVGUtil}, as long
+ * as the attributes of each element are written in alphabetical order.
+ *
+ * Numbers are formatted without creating strings. By default they are written
+ * exactly as {@link Double#toString(double)} would; numbers with at most three
+ * decimals, such as most coordinates, take a fast path. Optionally, numbers are
+ * rounded to a fixed number of decimals instead, which is always fast and
+ * gives smaller files.
+ */
+public class SVGWriter implements Closeable {
+
+	private static final double[] POWERS_OF_TEN = { 1, 10, 100, 1000, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9 };
+
+	/** Largest number of decimals that the exact fast path tries. */
+	private static final int MAX_EXACT_DECIMALS = 3;
+
+	private final Writer out;
+	private final ArrayDeque<String> openElements = new ArrayDeque<String>();
+
+	/** Whether the start tag of the innermost element still lacks its "&gt;". */
+	private boolean startTagOpen = false;
+
+	/** Whether an attribute value is being written piecewise. */
+	private boolean inAttribute = false;
+
+	/** Number of decimals numbers are rounded to; -1 for exact numbers. */
+	private final int decimals;
+
+	private final char[] digits = new char[20];
+
+	/**
+	 * Creates a writer for the given stream with exact numbers.
+	 *
+	 * @param out
+	 *            stream to write the document to
+	 */
+	public SVGWriter(OutputStream out) {
+		this(out, -1);
+	}
+
+	/**
+	 * Creates a writer for the given stream that rounds numbers to the given
+	 * number of decimals.
+	 *
+	 * @param out
+	 *            stream to write the document to
+	 * @param decimals
+	 *            number of decimals (at most 9), or -1 for exact numbers
+	 */
+	public SVGWriter(OutputStream out, int decimals) {
+		if (decimals >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("At most " + (POWERS_OF_TEN.length - 1) + " decimals supported.");
+		}
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+		this.decimals = decimals;
+		write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+	}
+
+	public SVGWriter startElement(String name) {
+		closeStartTag();
+		write('<');
+		write(name);
+		openElements.push(name);
+		startTagOpen = true;
+		return this;
+	}
+
+	public SVGWriter attribute(String name, String value) {
+		startAttribute(name);
+		writeEscaped(value);
+		return endAttribute();
+	}
+
+	public SVGWriter attribute(String name, double value) {
+		startAttribute(name);
+		number(value);
+		return endAttribute();
+	}
+
+	public SVGWriter attribute(String name, int value) {
+		startAttribute(name);
+		number(value);
+		return endAttribute();
+	}
+
+	/**
+	 * Starts an attribute whose value is then given piecewise with
+	 * {@link #number(double)} and {@link #text(String)}, e.g. path data.
+	 */
+	public SVGWriter startAttribute(String name) {
+		write(' ');
+		write(name);
+		write("=\"");
+		inAttribute = true;
+		return this;
+	}
+
+	public SVGWriter endAttribute() {
+		write('"');
+		inAttribute = false;
+		return this;
+	}
+
+	/**
+	 * Writes the given text, either as part of an attribute value or as
+	 * content of the current element.
+	 */
+	public SVGWriter text(String text) {
+		if (!inAttribute) {
+			closeStartTag();
+		}
+		writeEscaped(text);
+		return this;
+	}
+
+	public SVGWriter endElement() {
+		String name = openElements.pop();
+		if (startTagOpen) {
+			write("/>");
+			startTagOpen = false;
+		} else {
+			write("</");
+			write(name);
+			write('>');
+		}
+		return this;
+	}
+
+	public SVGWriter number(int value) {
+		write(Integer.toString(value));
+		return this;
+	}
+
+	/** Writes the given number as part of an attribute value. */
+	public SVGWriter number(double value) {
+		if (decimals >= 0) {
+			writeRounded(value, decimals);
+		} else if (!writeShortDecimal(value)) {
+			write(Double.toString(value));
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the given number like {@link Double#toString(double)} if it has a
+	 * decimal representation with at most three decimals in the range where
+	 * that method does not use exponents.
+	 *
+	 * @return whether the number was written
+	 */
+	boolean writeShortDecimal(double value) {
+		double magnitude = Math.abs(value);
+		if (!(magnitude >= 1e-3 && magnitude < 1e7)) {
+			if (value == 0) {
+				write((Double.doubleToRawLongBits(value) < 0) ? "-0.0" : "0.0");
+				return true;
+			}
+			return false;
+		}
+		for (int numberOfDecimals = 0; numberOfDecimals <= MAX_EXACT_DECIMALS; numberOfDecimals++) {
+			double scale = POWERS_OF_TEN[numberOfDecimals];
+			double scaled = Math.rint(value * scale);
+			if (scaled / scale == value) {
+				writeFixed((long) scaled, Math.max(1, numberOfDecimals), numberOfDecimals);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeRounded(double value, int numberOfDecimals) {
+		double scaled = Math.rint(value * POWERS_OF_TEN[numberOfDecimals]);
+		if (Double.isNaN(scaled) || Math.abs(scaled) >= 1e18) {
+			write(Double.toString(value));
+			return;
+		}
+		long fixed = (long) scaled;
+		// drop trailing zeros of the decimals
+		int shownDecimals = numberOfDecimals;
+		while (shownDecimals > 0 && fixed % 10 == 0) {
+			fixed /= 10;
+			shownDecimals--;
+		}
+		writeFixed(fixed, shownDecimals, shownDecimals);
+	}
+
+	/**
+	 * Writes value / 10^scale with the given number of decimals (at least
+	 * scale), where zero decimals means no decimal point.
+	 */
+	private void writeFixed(long value, int shownDecimals, int scale) {
+		boolean negative = value < 0;
+		long remaining = Math.abs(value);
+		int position = digits.length;
+		for (int i = scale; i < shownDecimals; i++) {
+			digits[--position] = '0';
+		}
+		for (int i = 0; i < scale; i++) {
+			digits[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		if (shownDecimals > 0) {
+			digits[--position] = '.';
+		}
+		do {
+			digits[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining > 0);
+		if (negative) {
+			digits[--position] = '-';
+		}
+		try {
+			out.write(digits, position, digits.length - position);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void closeStartTag() {
+		if (startTagOpen) {
+			write('>');
+			startTagOpen = false;
+		}
+	}
+
+	private void writeEscaped(String text) {
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			String escaped;
+			switch (text.charAt(i)) {
+			case '&':
+				escaped = "&amp;";
+				break;
+			case '<':
+				escaped = "&lt;";
+				break;
+			case '>':
+				escaped = "&gt;";
+				break;
+			case '"':
+				escaped = "&quot;";
+				break;
+			default:
+				continue;
+			}
+			write(text, start, i - start);
+			write(escaped);
+			start = i + 1;
+		}
+		write(text, start, text.length() - start);
+	}
+
+	private void write(String text) {
+		write(text, 0, text.length());
+	}
+
+	private void write(String text, int offset, int length) {
+		try {
+			out.write(text, offset, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void write(char c) {
+		try {
+			out.write(c);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Ends all open elements, flushes, and closes the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		while (!openElements.isEmpty()) {
+			endElement();
+		}
+		out.close();
+	}
+}
@@ -2,11 +2,21 @@ package io;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import model.Tree;
 import model.Vertex;
@@ -22,20 +32,102 @@ public class TreeParser {
 	public String[] taxaNames;
 	public boolean parsePopSize = false;
 
-	private static final Pattern NEWICK_VERTEX = Pattern
-			.compile("(?<name>[\\d]*)" + "(\\[\\&(?<attributes>[a-zA-Z0-9\\p{Punct}^:]*?)\\])?"
-					+ "(:(?<length>[\\d]*.[\\d]*(E\\-[\\d]+)?))?");
-	private Matcher vertexMatcher;
+	/** Powers of ten that are exact doubles, for parsing branch lengths. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+			1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
 
-	private static final Pattern NEWICK_POP_ATTRIBUTE = Pattern
-			.compile("pop=" + "(?<popAttribute>[\\d]*\\.[\\d]*(E[\\-\\+][\\d]+)?)");
-	private Matcher popAttributeMatcher;
+	private static final String POP_ATTRIBUTE = "pop=";
 
-	public ArrayList<Tree> readTrees(File treeFile, String treeName) throws IOException {
-		FileReader fr = new FileReader(treeFile);
-		BufferedReader br = new BufferedReader(fr);
+	public TreeParser() {
+	}
+
+	/** Creates a parser with the taxa names and settings of the given parser. */
+	private TreeParser(TreeParser parser) {
+		this.taxaNames = parser.taxaNames;
+		this.parsePopSize = parser.parsePopSize;
+	}
 
+	public ArrayList<Tree> readTrees(File treeFile, String treeName) throws IOException {
 		ArrayList<Tree> trees = new ArrayList<Tree>();
+		try (TreeIterator iterator = iterateTrees(treeFile, treeName)) {
+			while (iterator.hasNext()) {
+				trees.add(iterator.next());
+			}
+		}
+
+		System.out.println(" - number of trees: " + trees.size());
+
+		return trees;
+	}
+
+	/**
+	 * Opens the given NEXUS file, reads its taxa, and returns an iterator over
+	 * its trees. Each call of next() reads and parses one tree line, so only
+	 * the current tree has to be kept in memory. The iterator has to be closed.
+	 * 
+	 * @param treeFile
+	 *            NEXUS file
+	 * @param treeName
+	 *            name given to each tree
+	 * @return an iterator over the trees of the file
+	 * @throws IOException
+	 *             if the file cannot be opened or its taxa cannot be read
+	 */
+	public TreeIterator iterateTrees(File treeFile, String treeName) throws IOException {
+		return new TreeIterator(treeFile, treeName, null, 0);
+	}
+
+	/**
+	 * Opens the given NEXUS file, reads its taxa, and returns an iterator over
+	 * its trees, where tree lines are parsed in parallel by the given executor.
+	 * At most the given number of trees are read and parsed ahead of the
+	 * iteration, so memory stays bounded. The trees are returned in file order.
+	 * The iterator has to be closed; the executor is not shut down.
+	 * 
+	 * @param treeFile
+	 *            NEXUS file
+	 * @param treeName
+	 *            name given to each tree
+	 * @param executor
+	 *            executor that parses the tree lines
+	 * @param prefetch
+	 *            maximum number of trees parsed ahead (at least 1)
+	 * @return an iterator over the trees of the file
+	 * @throws IOException
+	 *             if the file cannot be opened or its taxa cannot be read
+	 */
+	public TreeIterator iterateTrees(File treeFile, String treeName, ExecutorService executor,
+			int prefetch) throws IOException {
+		return new TreeIterator(treeFile, treeName, executor, Math.max(1, prefetch));
+	}
+
+	/**
+	 * Returns a sequential stream of the trees of the given NEXUS file, which
+	 * are read and parsed lazily; see {@link #iterateTrees(File, String)}. The
+	 * stream has to be closed.
+	 * 
+	 * @param treeFile
+	 *            NEXUS file
+	 * @param treeName
+	 *            name given to each tree
+	 * @return a stream of the trees of the file
+	 * @throws IOException
+	 *             if the file cannot be opened or its taxa cannot be read
+	 */
+	public Stream<Tree> streamTrees(File treeFile, String treeName) throws IOException {
+		TreeIterator iterator = iterateTrees(treeFile, treeName);
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(iterator,
+						Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(iterator::close);
+	}
+
+	/**
+	 * Reads the header of a NEXUS file up to and including the taxa names.
+	 * 
+	 * @return the number of leaves
+	 */
+	private int readHeader(BufferedReader br) throws IOException {
 		int numberOfLeaves;
 
 		String line = null;
@@ -69,84 +161,200 @@ public class TreeParser {
 		}
 		System.out.println(" - taxa names parsed");
 
-		line = br.readLine();
-		String token[] = line.trim().split(" ");
-		while (token[0].equals("tree")) {
-			// System.out.println(" - parsing a tree");
-			Tree tree = parseTree(token, numberOfLeaves);
-			tree.setName(treeName);
-			trees.add(tree);
-			line = br.readLine();
-			if (line == null)
-				break;
-			token = line.trim().split(" ");
+		return numberOfLeaves;
+	}
+
+	/**
+	 * Iterator over the trees of a NEXUS file, which reads the tree lines one
+	 * at a time and parses them on demand, or ahead in parallel.
+	 */
+	public class TreeIterator implements Iterator<Tree>, AutoCloseable {
+
+		private final BufferedReader br;
+		private final String treeName;
+		private final int numberOfLeaves;
+
+		private final ExecutorService executor;
+		private final int prefetch;
+		/** Trees being parsed ahead, in file order. */
+		private final ArrayDeque<Future<Tree>> parsing = new ArrayDeque<Future<Tree>>();
+
+		/** Next tree line that has not been parsed yet; null at the end. */
+		private String nextLine;
+
+		private TreeIterator(File treeFile, String treeName, ExecutorService executor, int prefetch)
+				throws IOException {
+			this.br = Files.newBufferedReader(treeFile.toPath(), Charset.defaultCharset());
+			this.treeName = treeName;
+			this.executor = executor;
+			this.prefetch = prefetch;
+			try {
+				this.numberOfLeaves = readHeader(br);
+				readNextLine();
+			} catch (IOException | RuntimeException e) {
+				br.close();
+				throw e;
+			}
 		}
 
-		System.out.println(" - number of trees: " + trees.size());
+		private void readNextLine() throws IOException {
+			String line = br.readLine();
+			if (line != null) {
+				line = line.trim();
+				if (!line.startsWith("tree ")) {
+					line = null;
+				}
+			}
+			nextLine = line;
+		}
 
-		br.close();
-		return trees;
+		@Override
+		public boolean hasNext() {
+			return (nextLine != null) || !parsing.isEmpty();
+		}
+
+		@Override
+		public Tree next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			try {
+				if (executor == null) {
+					// System.out.println(" - parsing a tree");
+					Tree tree = parseTree(nextLine, numberOfLeaves);
+					tree.setName(treeName);
+					readNextLine();
+					return tree;
+				}
+
+				while ((parsing.size() < prefetch) && (nextLine != null)) {
+					String line = nextLine;
+					TreeParser parser = new TreeParser(TreeParser.this);
+					parsing.add(executor.submit(() -> {
+						Tree tree = parser.parseTree(line, numberOfLeaves);
+						tree.setName(treeName);
+						return tree;
+					}));
+					readNextLine();
+				}
+				return parsing.poll().get();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while parsing a tree", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		@Override
+		public void close() {
+			for (Future<Tree> future : parsing) {
+				future.cancel(false);
+			}
+			parsing.clear();
+			nextLine = null;
+			try {
+				br.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 
-	private Tree parseTree(String[] token, int numberOfLeaves) {
-		int statusNumber = Integer.parseInt(token[1].replaceAll("[^0-9]", ""));
+	/**
+	 * Parses a tree from a line "tree STATE_&lt;number&gt; = &lt;newick&gt;"
+	 * without splitting it into tokens; the Newick string is parsed in place.
+	 */
+	private Tree parseTree(String line, int numberOfLeaves) {
+		// status number from the digits of the second token
+		int position = line.indexOf(' ') + 1;
+		int statusNumber = 0;
+		while (position < line.length() && line.charAt(position) != ' ') {
+			char c = line.charAt(position++);
+			if (isDigit(c)) {
+				statusNumber = 10 * statusNumber + (c - '0');
+			}
+		}
 		// System.out.println(" -- parsed status number: " + statusNumber);
 
-		// System.out.println(" -- newick string of tree: " + token[3]);
-		String newickTree = token[3];
-		vertexMatcher = NEWICK_VERTEX.matcher(newickTree);
-		popAttributeMatcher = NEWICK_POP_ATTRIBUTE.matcher(newickTree);
+		// Newick string starts after the third token "="
+		position = line.indexOf(' ', position + 1) + 1;
 
-		parsingPosition = 0;
+		parsingPosition = position;
 		vertexIDCounter = numberOfLeaves + 1;
 
-		Vertex root = parseVertex(newickTree);
+		Vertex root = parseVertex(line);
 
 		Tree tree = new Tree(root, numberOfLeaves, statusNumber);
 
 		return tree;
 	}
 
+	/**
+	 * Parses the vertices of the Newick tree string from the current parsing
+	 * position on. Instead of recursing, keeps an explicit stack with the
+	 * first child (or null if not yet parsed) of every opened inner vertex,
+	 * so that also very deep trees can be parsed.
+	 */
 	private Vertex parseVertex(String newickTree) {
-		Vertex vertex;
-		boolean isLeaf = true;
-		Vertex firstChild = null;
-		Vertex secondChild = null;
-		int id;
+		ArrayList<Vertex> firstChildren = new ArrayList<Vertex>();
 
-		// check if inner vertex, if so progress down
-		if (newickTree.charAt(parsingPosition) == '(') {
-			isLeaf = false;
+		while (true) {
+			// progress down to the next leaf
+			while (newickTree.charAt(parsingPosition) == '(') {
+				parsingPosition++; // skip "("
+				firstChildren.add(null);
+			}
+			Vertex vertex = parseVertexValues(newickTree, null, null);
+
+			// progress up while the parsed vertex is a second child
+			while (!firstChildren.isEmpty() && firstChildren.get(firstChildren.size() - 1) != null) {
+				Vertex firstChild = firstChildren.remove(firstChildren.size() - 1);
+				if (newickTree.charAt(parsingPosition) != ')') {
+					System.out.println("ended up at wrong position in string, "
+							+ "not end of children: ... " + newickTree.substring(parsingPosition));
+				}
+				parsingPosition++; // skip ")"
+				vertex = parseVertexValues(newickTree, firstChild, vertex);
+			}
 
-			// first child
-			parsingPosition++; // skip "("
-			firstChild = parseVertex(newickTree);
+			if (firstChildren.isEmpty()) {
+				return vertex;
+			}
 
-			// second child
+			// parsed vertex is a first child, continue with second child
+			firstChildren.set(firstChildren.size() - 1, vertex);
 			if (newickTree.charAt(parsingPosition) != ',') {
 				System.out.println("ended up at wrong position in string, "
 						+ "not between children: ... " + newickTree.substring(parsingPosition));
 			}
 			parsingPosition++; // skip ","
-			secondChild = parseVertex(newickTree);
-
-			// own values
-			if (newickTree.charAt(parsingPosition) != ')') {
-				System.out.println("ended up at wrong position in string, "
-						+ "not end of children: ... " + newickTree.substring(parsingPosition));
-			}
-			parsingPosition++; // skip ")"
 		}
+	}
 
-		// now handle this vertex
-		vertexMatcher.find(parsingPosition);
+	/**
+	 * Creates the vertex whose name, attributes and length start at the
+	 * current parsing position; a leaf if no children are given. The values
+	 * are scanned character by character in a single pass.
+	 */
+	private Vertex parseVertexValues(String newickTree, Vertex firstChild, Vertex secondChild) {
+		Vertex vertex;
+		boolean isLeaf = (firstChild == null);
+		int length = newickTree.length();
 
 		// extract ID if exists
-		String stringID = vertexMatcher.group("name");
-		if (stringID.equals("")) {
+		int id = 0;
+		int nameStart = parsingPosition;
+		while (parsingPosition < length && isDigit(newickTree.charAt(parsingPosition))) {
+			id = 10 * id + (newickTree.charAt(parsingPosition++) - '0');
+		}
+		if (parsingPosition == nameStart) {
 			id = vertexIDCounter++;
-		} else {
-			id = Integer.parseInt(stringID);
 		}
 
 		// create vertex
@@ -157,28 +365,103 @@ public class TreeParser {
 			vertex.setTaxonName(taxaNames[id - 1]);
 		}
 
+		// find attributes "[&...]" (if exist)
+		int attributesStart = -1;
+		int attributesEnd = -1;
+		if (newickTree.startsWith("[&", parsingPosition)) {
+			int end = parsingPosition + 2;
+			while (end < length && newickTree.charAt(end) != ']'
+					&& isAttributeCharacter(newickTree.charAt(end))) {
+				end++;
+			}
+			if (end < length && newickTree.charAt(end) == ']') {
+				attributesStart = parsingPosition + 2;
+				attributesEnd = end;
+				parsingPosition = end + 1;
+			}
+		}
+
 		// extract length of incoming edge (if exists)
-		String length = vertexMatcher.group("length");
-		if ((length != null) && !length.equals("")) {
-			vertex.setBranchLengthIncoming(Double.valueOf(length));
+		if (parsingPosition < length && newickTree.charAt(parsingPosition) == ':') {
+			parsingPosition++; // skip ":"
+			vertex.setBranchLengthIncoming(parseNumber(newickTree));
 		} else {
 			vertex.setBranchLengthIncoming(firstChild.getBranchLengthIncoming());
 		}
 
 		// extract pop size (if requested (for species tree))
-		if (parsePopSize) {
-			popAttributeMatcher.find(parsingPosition);
-			String popAttribute = popAttributeMatcher.group("popAttribute");
-			if (!popAttribute.equals("")) {
-				vertex.setPopulationSize(Double.valueOf(popAttribute));
+		if (parsePopSize && attributesStart >= 0) {
+			int popStart = newickTree.indexOf(POP_ATTRIBUTE, attributesStart);
+			if (popStart >= 0 && popStart < attributesEnd) {
+				int position = parsingPosition;
+				parsingPosition = popStart + POP_ATTRIBUTE.length();
+				vertex.setPopulationSize(parseNumber(newickTree));
+				parsingPosition = position;
 			}
 			// System.out.println(vertex.getPopulationSize());
 		}
 
-		// set position in string for next vertex
-		parsingPosition = vertexMatcher.end();
-
 		return vertex;
 	}
 
+	/**
+	 * Parses the decimal number "digits[.digits][E[+-]digits]" at the current
+	 * parsing position and moves behind it. Numbers with at most 15 digits and
+	 * a decimal exponent of at most 22 are exact in a long and a double, so a
+	 * single correctly rounded multiplication or division gives the same value
+	 * as {@link Double#parseDouble(String)}, without creating a string.
+	 */
+	private double parseNumber(String newickTree) {
+		int length = newickTree.length();
+		int start = parsingPosition;
+		long mantissa = 0;
+		int numberOfDigits = 0;
+		int exponent = 0;
+		while (parsingPosition < length && isDigit(newickTree.charAt(parsingPosition))) {
+			mantissa = 10 * mantissa + (newickTree.charAt(parsingPosition++) - '0');
+			numberOfDigits++;
+		}
+		if (parsingPosition < length && newickTree.charAt(parsingPosition) == '.') {
+			parsingPosition++;
+			while (parsingPosition < length && isDigit(newickTree.charAt(parsingPosition))) {
+				mantissa = 10 * mantissa + (newickTree.charAt(parsingPosition++) - '0');
+				numberOfDigits++;
+				exponent--;
+			}
+		}
+		if (parsingPosition + 1 < length && (newickTree.charAt(parsingPosition) == 'E'
+				|| newickTree.charAt(parsingPosition) == 'e')) {
+			int position = parsingPosition + 1;
+			boolean negative = (newickTree.charAt(position) == '-');
+			if (negative || newickTree.charAt(position) == '+') {
+				position++;
+			}
+			if (position < length && isDigit(newickTree.charAt(position))) {
+				int decimalExponent = 0;
+				while (position < length && isDigit(newickTree.charAt(position))) {
+					decimalExponent = 10 * decimalExponent + (newickTree.charAt(position++) - '0');
+				}
+				exponent += negative ? -decimalExponent : decimalExponent;
+				parsingPosition = position;
+			}
+		}
+
+		if (numberOfDigits <= 15 && Math.abs(exponent) < POWERS_OF_TEN.length) {
+			return (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent]
+					: mantissa * POWERS_OF_TEN[exponent];
+		}
+		return Double.parseDouble(newickTree.substring(start, parsingPosition));
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/** Whether the given character may appear in "[&...]" attributes. */
+	private static boolean isAttributeCharacter(char c) {
+		// letters, digits, and ASCII punctuation (includes ^ and :)
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c)
+				|| (c > ' ' && c < 127 && !Character.isLetterOrDigit(c));
+	}
+
 }
@@ -0,0 +1,172 @@
+package model;
+
+import java.util.BitSet;
+
+/**
+ * This class stores an embedding of a tree, that is, a leaf order, without
+ * changing the tree. It consists of the set of inner vertices whose second
+ * child is placed to the left (by index) and the position of each leaf in the
+ * resulting leaf order (by index).
+ *
+ * An embedding is immutable, so that embeddings computed by different
+ * orderers for the same geophylogeny can be compared, evaluated, and applied
+ * independently, also from different threads.
+ */
+public class Embedding {
+
+	/** Inner vertices (by index) whose second child is their left child. */
+	private final BitSet secondChildLeft;
+
+	/** Position of each leaf (by index) in the leaf order. */
+	private final int[] positionOfLeaf;
+
+	/**
+	 * Creates an embedding from the given rotations and leaf positions, which
+	 * have to be consistent; both are copied.
+	 *
+	 * @param secondChildLeft
+	 *            inner vertices (by index) whose second child is left
+	 * @param positionOfLeaf
+	 *            position of each leaf (by index)
+	 */
+	public Embedding(BitSet secondChildLeft, int[] positionOfLeaf) {
+		this.secondChildLeft = (BitSet) secondChildLeft.clone();
+		this.positionOfLeaf = positionOfLeaf.clone();
+	}
+
+	/**
+	 * Creates an embedding of the given tree from the given rotations, that
+	 * is, computes the positions of the leaves.
+	 *
+	 * @param tree
+	 *            tree that is embedded
+	 * @param secondChildLeft
+	 *            inner vertices (by index) whose second child is left
+	 * @return the embedding with the given rotations
+	 */
+	public static Embedding fromRotations(Tree tree, BitSet secondChildLeft) {
+		int[] positionOfLeaf = new int[tree.getNumberOfLeaves()];
+		Vertex[] stack = new Vertex[tree.getNumberOfVertices()];
+		int[] stackPosition = new int[tree.getNumberOfVertices()];
+		int size = 0;
+		stack[size] = tree.getRoot();
+		stackPosition[size] = 0;
+		size++;
+		while (size > 0) {
+			size--;
+			Vertex vertex = stack[size];
+			int position = stackPosition[size];
+			if (vertex.isLeaf()) {
+				positionOfLeaf[vertex.getIndex()] = position;
+				continue;
+			}
+			Vertex left = vertex.getFirstChild();
+			Vertex right = vertex.getSecondChild();
+			if (secondChildLeft.get(vertex.getIndex())) {
+				left = vertex.getSecondChild();
+				right = vertex.getFirstChild();
+			}
+			stack[size] = right;
+			stackPosition[size] = position + left.getCladeSize();
+			size++;
+			stack[size] = left;
+			stackPosition[size] = position;
+			size++;
+		}
+		return new Embedding(secondChildLeft, positionOfLeaf);
+	}
+
+	/**
+	 * Creates an embedding with the current embedding of the given tree.
+	 *
+	 * @param tree
+	 *            tree whose embedding is stored
+	 * @return the current embedding of the given tree
+	 */
+	public static Embedding fromTree(Tree tree) {
+		BitSet secondChildLeft = new BitSet(tree.getNumberOfVertices());
+		for (Vertex vertex : tree.getInnnerVertices()) {
+			if (vertex.getLeftChild() != vertex.getFirstChild()) {
+				secondChildLeft.set(vertex.getIndex());
+			}
+		}
+		return fromRotations(tree, secondChildLeft);
+	}
+
+	public boolean isFirstChildLeft(Vertex vertex) {
+		return !secondChildLeft.get(vertex.getIndex());
+	}
+
+	public Vertex getLeftChild(Vertex vertex) {
+		return isFirstChildLeft(vertex) ? vertex.getFirstChild() : vertex.getSecondChild();
+	}
+
+	public Vertex getRightChild(Vertex vertex) {
+		return isFirstChildLeft(vertex) ? vertex.getSecondChild() : vertex.getFirstChild();
+	}
+
+	public int getPositionOfLeaf(Vertex leaf) {
+		return positionOfLeaf[leaf.getIndex()];
+	}
+
+	/**
+	 * Returns the set of inner vertices (by index) whose second child is their
+	 * left child.
+	 *
+	 * @return a copy of the rotations of this embedding
+	 */
+	public BitSet getSecondChildLeft() {
+		return (BitSet) secondChildLeft.clone();
+	}
+
+	/**
+	 * Returns the leaves of the given tree in the order of this embedding.
+	 *
+	 * @param tree
+	 *            tree of this embedding
+	 * @return the leaves in the order of this embedding
+	 */
+	public Vertex[] getLeavesInOrder(Tree tree) {
+		Vertex[] leaves = tree.getLeavesInIndexOrder();
+		Vertex[] leavesInOrder = new Vertex[leaves.length];
+		for (Vertex leaf : leaves) {
+			leavesInOrder[positionOfLeaf[leaf.getIndex()]] = leaf;
+		}
+		return leavesInOrder;
+	}
+
+	/**
+	 * Sets this embedding as the embedding of the tree of the given
+	 * geophylogeny and computes the x-coordinates of its vertices.
+	 *
+	 * @param geophylogeny
+	 *            geophylogeny whose tree gets this embedding
+	 */
+	public void applyTo(Geophylogeny geophylogeny) {
+		for (Vertex vertex : geophylogeny.getTree().getInnnerVertices()) {
+			Vertex left = getLeftChild(vertex);
+			if (vertex.getLeftChild() != left) {
+				vertex.setAsLeftChild(left);
+			}
+		}
+		geophylogeny.computeXCoordinates();
+	}
+
+	/**
+	 * Counts the leader crossings of the drawing of the given geophylogeny with
+	 * this embedding, without changing the geophylogeny.
+	 *
+	 * @param geophylogeny
+	 *            geophylogeny whose tree has this embedding
+	 * @return the number of leader crossings with this embedding
+	 */
+	public int computeNumberOfCrossings(Geophylogeny geophylogeny) {
+		Vertex[] leaves = getLeavesInOrder(geophylogeny.getTree());
+		LeaderKernel kernel = new LeaderKernel(geophylogeny.getLeaderType(), leaves.length);
+		for (int position = 0; position < leaves.length; position++) {
+			kernel.add(geophylogeny.getXByPosition(position),
+					geophylogeny.getSiteOfLeaf(leaves[position]));
+		}
+		return kernel.countCrossings();
+	}
+}
@@ -30,6 +30,13 @@ public class Geophylogeny {
 	/** Mapping from vertex index to cluster number. */
 	private int[] clusterOfVertex;
 
+	/**
+	 * Version of the layout of the tree that this geophylogeny computed for its
+	 * current leaf step, or -1; later rotations can only be updated
+	 * incrementally while the tree still has this version.
+	 */
+	private long layoutVersion = -1;
+
 	public Geophylogeny(Tree tree, Site[] sites, int mapWidth, int mapHeight, String name) {
 		this.tree = tree;
 		this.sites = sites;
@@ -50,6 +57,7 @@ public class Geophylogeny {
 
 	public void setTree(Tree tree) {
 		this.tree = tree;
+		this.layoutVersion = -1;
 	}
 
 	public String getName() {
@@ -131,15 +139,62 @@ public class Geophylogeny {
 
 	/**
 	 * Computes and sets the x-coordinates of each vertex in the tree of this geophylogeny
-	 * based on the embedding implicitly stored in the tree. 
+	 * based on the embedding implicitly stored in the tree. If only some vertices have
+	 * been rotated since the last call, only their subtrees and ancestors are updated;
+	 * if another geophylogeny with the same tree computed its x-coordinates or an
+	 * x-coordinate was set in between, all of them are computed again.
 	 */
 	public void computeXCoordinates() {
-		Vertex[] leaves = tree.getLeavesInTreeOrder();
-		for (int i = 0; i < leaves.length; i++) {
-			leaves[i].setX(getXByPosition(i));
+		Vertex[] rotated = (layoutVersion == tree.getLayoutVersion()) ? tree.getRotatedSinceLayout() : null;
+		int numberOfRotated = tree.getNumberOfRotatedSinceLayout();
+		layoutVersion = tree.startLayout();
+
+		if (rotated == null) {
+			Vertex[] leaves = tree.getLeavesInOrder();
+			for (int i = 0; i < leaves.length; i++) {
+				leaves[i].setLayoutX(getXByPosition(i));
+			}
+			for (Vertex vertex : tree.getInnnerVertices()) {
+				vertex.setLayoutX((vertex.getLeftChild().getX() + vertex.getRightChild().getX()) / 2);
+			}
+		} else {
+			for (int i = 0; i < numberOfRotated; i++) {
+				updateXCoordinates(rotated[i]);
+			}
 		}
-		for (Vertex vertex: tree.getInnnerVertices()) {
-			vertex.setX((vertex.getLeftChild().getX() + vertex.getRightChild().getX()) / 2);
+	}
+
+	/**
+	 * Updates the x-coordinates of the subtree and the ancestors of the given
+	 * rotated vertex in O(subtree size + depth) time.
+	 */
+	private void updateXCoordinates(Vertex rotated) {
+		Vertex[] leaves = tree.getLeavesInOrder();
+		int end = tree.getCladeEnd(rotated);
+		for (int position = tree.getCladeStart(rotated); position < end; position++) {
+			leaves[position].setLayoutX(getXByPosition(position));
+		}
+
+		// pre-order of the subtree, then inner vertices in reverse
+		Vertex[] subtree = new Vertex[rotated.getSubtreeSize()];
+		int numVisited = 0;
+		subtree[numVisited++] = rotated;
+		for (int i = 0; i < numVisited; i++) {
+			Vertex vertex = subtree[i];
+			if (!vertex.isLeaf()) {
+				subtree[numVisited++] = vertex.getFirstChild();
+				subtree[numVisited++] = vertex.getSecondChild();
+			}
+		}
+		for (int i = numVisited - 1; i >= 0; i--) {
+			Vertex vertex = subtree[i];
+			if (!vertex.isLeaf()) {
+				vertex.setLayoutX((vertex.getLeftChild().getX() + vertex.getRightChild().getX()) / 2);
+			}
+		}
+
+		for (Vertex vertex = rotated.getParent(); vertex != null; vertex = vertex.getParent()) {
+			vertex.setLayoutX((vertex.getLeftChild().getX() + vertex.getRightChild().getX()) / 2);
 		}
 	}
 
@@ -147,28 +202,32 @@ public class Geophylogeny {
 		return (position + 1) * leafStep;
 	}
 	
+	/**
+	 * Computes the number of crossings between the leaders of the current
+	 * drawing of this geophylogeny with the sweep-based counters for s- and
+	 * po-leaders; for other leader types there are no crossings.
+	 * 
+	 * @return the number of leader crossings
+	 */
 	public int computeNumberOfCrossings() {
-		Vertex[] leaves = this.tree.getLeavesInTreeOrder();
-		Leader[] leader = new Leader[leaves.length];
-		
-		for (int i = 0; i < leader.length; i++) {
-			leader[i] = new Leader(leaves[i], this.getSiteOfLeaf(leaves[i]), this.getLeaderType());
-		}
-		
-		int numberOfCrossings = 0;
-		for (int i = 0; i < leader.length; i++) {
-			for (int j = i + 1; j < leader.length; j++) {
-				numberOfCrossings += leader[i].crossesLeader(leader[j]) ? 1 : 0; 
-			}
-		}
-		
-		return numberOfCrossings;
+		return LeaderKernel.fromGeophylogeny(this).countCrossings();
+	}
+
+	/**
+	 * Computes the number of crossings between the leaders of the current
+	 * drawing of this geophylogeny by testing every pair of leaders.
+	 * 
+	 * @return the number of leader crossings
+	 */
+	public int computeNumberOfCrossingsPairwise() {
+		return LeaderKernel.fromGeophylogeny(this).countCrossingsPairwise();
 	}
 
 	public void scale(double scalor) {
 		mapWidth = (int) (mapWidth * scalor);
 		mapHeight = (int) (mapHeight * scalor);
 		leafStep = ((double) mapWidth) / (tree.getNumberOfLeaves() + 1);
+		layoutVersion = -1;
 		
 		for (Site site : sites) {
 			site.x = site.x * scalor;
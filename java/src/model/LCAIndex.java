@@ -0,0 +1,71 @@
+package model;
+
+/**
+ * This class answers lowest common ancestor queries in a {@link Tree} in O(1)
+ * time after O(n log n) preprocessing.
+ *
+ * It uses the pre-order of the vertices: for two distinct vertices u and v
+ * with u before v, the lowest common ancestor is the parent of a vertex of
+ * minimum discrete depth in the pre-order range (u, v], unless u is an
+ * ancestor of v. Range minima are read from a sparse table, which for n
+ * leaves takes about 8 n log n bytes.
+ */
+class LCAIndex {
+
+	private final Vertex[] vertexAtRank;
+	private final int[] rankOfVertex; // indexed by id-1
+	private final int[] depthAtRank;
+
+	/** Rank of a vertex of minimum depth in [rank, rank + 2^level). */
+	private final int[][] minimumRank;
+
+	LCAIndex(Tree tree) {
+		vertexAtRank = tree.getVerticesInPreOrder();
+		int numberOfVertices = vertexAtRank.length;
+		rankOfVertex = new int[numberOfVertices];
+		depthAtRank = new int[numberOfVertices];
+		for (int rank = 0; rank < numberOfVertices; rank++) {
+			rankOfVertex[vertexAtRank[rank].getIndex()] = rank;
+			depthAtRank[rank] = vertexAtRank[rank].getDiscreteDepth();
+		}
+
+		int numberOfLevels = 32 - Integer.numberOfLeadingZeros(numberOfVertices);
+		minimumRank = new int[numberOfLevels][];
+		minimumRank[0] = new int[numberOfVertices];
+		for (int rank = 0; rank < numberOfVertices; rank++) {
+			minimumRank[0][rank] = rank;
+		}
+		for (int level = 1; level < numberOfLevels; level++) {
+			int half = 1 << (level - 1);
+			int[] previous = minimumRank[level - 1];
+			int[] current = new int[numberOfVertices - (1 << level) + 1];
+			for (int rank = 0; rank < current.length; rank++) {
+				current[rank] = lower(previous[rank], previous[rank + half]);
+			}
+			minimumRank[level] = current;
+		}
+	}
+
+	Vertex getLCA(Vertex first, Vertex second) {
+		return getLCAByRanks(rankOfVertex[first.getIndex()], rankOfVertex[second.getIndex()]);
+	}
+
+	Vertex getLCA(int firstIndex, int secondIndex) {
+		return getLCAByRanks(rankOfVertex[firstIndex], rankOfVertex[secondIndex]);
+	}
+
+	private Vertex getLCAByRanks(int first, int second) {
+		if (first == second) {
+			return vertexAtRank[first];
+		}
+		int from = Math.min(first, second) + 1;
+		int to = Math.max(first, second);
+		int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+		int minimum = lower(minimumRank[level][from], minimumRank[level][to - (1 << level) + 1]);
+		return vertexAtRank[minimum].getParent();
+	}
+
+	private int lower(int first, int second) {
+		return (depthAtRank[first] <= depthAtRank[second]) ? first : second;
+	}
+}
@@ -1,7 +1,5 @@
 package model;
 
-import java.awt.geom.*;
-
 /**
  * This class represents a leader in a drawing of a geophylogeny with external labeling.
  * Each leader has a leader type; so far s- and po-leader supported.
@@ -33,26 +31,9 @@ public class Leader {
 	public boolean crossesLeader(Leader otherLeader) {
 		// we assume that otherLeader has the same type
 
-		if (type == GeophylogenyLeaderType.S) {
-			Line2D segmentThis = new Line2D.Double(this.leaf.getX(), 0, this.site.x,
-					this.site.getY());
-			Line2D segmentOther = new Line2D.Double(otherLeader.leaf.getX(), 0, otherLeader.site.x,
-					otherLeader.site.getY());
-
-			return segmentThis.intersectsLine(segmentOther);
-		} else if (type == GeophylogenyLeaderType.PO) {
-			Line2D horizontalThis = new Line2D.Double(this.leaf.getX(), this.site.getY(),
-					this.site.x, this.site.getY());
-			Line2D verticalOther = new Line2D.Double(otherLeader.leaf.getX(), 0,
-					otherLeader.leaf.getX(), otherLeader.site.getY());
-
-			Line2D horizontalOther = new Line2D.Double(otherLeader.leaf.getX(),
-					otherLeader.site.getY(), otherLeader.site.x, otherLeader.site.getY());
-			Line2D verticalThis = new Line2D.Double(this.leaf.getX(), 0, this.leaf.getX(),
-					this.site.getY());
-
-			return horizontalThis.intersectsLine(verticalOther)
-					|| verticalThis.intersectsLine(horizontalOther);
+		if ((type == GeophylogenyLeaderType.S) || (type == GeophylogenyLeaderType.PO)) {
+			return LeaderKernel.leadersCross(type, this.leaf.getX(), this.site.x, this.site.y,
+					otherLeader.leaf.getX(), otherLeader.site.x, otherLeader.site.y);
 		} else {
 			System.out.println("Unsupported/'NONE' leader type specified.");
 			return false;
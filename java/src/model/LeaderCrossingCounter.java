@@ -0,0 +1,716 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * This class provides sweep-based methods to count the number of crossings
+ * between the leaders of a drawing of a geophylogeny. The leaders are given as
+ * primitive arrays, where leader i connects the leaf at (leafX[i], 0) with the
+ * site at (siteX[i], siteY[i]). The counts are the same as when testing every
+ * pair of leaders with {@link Leader#crossesLeader(Leader)}.
+ */
+public class LeaderCrossingCounter {
+
+	/**
+	 * Processing a swap event of the sweep costs about as much as testing 64
+	 * pairs of leaders directly; the sweep gives up after n^2 / 512 swaps,
+	 * which bounds the wasted work to about a quarter of the pairwise test.
+	 */
+	private static final int PAIRWISE_COST_RATIO = 512;
+
+	/**
+	 * Cost of a step of the sweeps, that is, of handling one leader in O(log n)
+	 * time, in terms of pairs of leaders tested directly. Between two groups of
+	 * leaders where one group is small, testing all pairs is faster. A sweep
+	 * over s-leaders also has to swap leaders that cross within a group, while
+	 * a test of two po-leaders consists of two segment intersection tests.
+	 */
+	private static final int S_PAIRS_PER_SWEEP_STEP = 32;
+	private static final int PO_PAIRS_PER_SWEEP_STEP = 2;
+
+	/**
+	 * Counts the number of crossings between the s-leaders given by the arrays.
+	 *
+	 * All leaders start on the line y = 0. Sweeping a horizontal line downwards,
+	 * the leaders keep their left-to-right order along the sweep line except
+	 * where two adjacent leaders cross, and since two segments cross at most
+	 * once, each crossing is exactly one swap of two adjacent leaders. The
+	 * sweep thus only has to process n end events and k swap events, which
+	 * results in a running time of O((n + k) log n) for k crossings; for the
+	 * low-crossing drawings produced by the heuristics this is close to
+	 * O(n log n). Whether two adjacent leaders cross is decided with the same
+	 * predicate as {@link Leader#crossesLeader(Leader)}, so degenerate cases
+	 * like touching leaders or shared sites are counted the same.
+	 *
+	 * If a site lies on or above the line y = 0 or two leaves share the same
+	 * x-coordinate, the method falls back to testing all pairs. The same
+	 * happens once the number of swaps shows that the drawing has so many
+	 * crossings that testing all pairs is faster.
+	 *
+	 * @param leafX
+	 *            x-coordinates of the leaves
+	 * @param siteX
+	 *            x-coordinates of the sites
+	 * @param siteY
+	 *            y-coordinates of the sites
+	 * @param n
+	 *            number of leaders to consider (a prefix of the arrays)
+	 * @return the number of crossings between the given s-leaders
+	 */
+	public static int countSLeaderCrossings(double[] leafX, double[] siteX, double[] siteY,
+			int n) {
+		return countSLeaderCrossings(leafX, siteX, siteY, -1, n, null);
+	}
+
+	/**
+	 * Counts the number of crossings between the s-leaders 0, ..., split-1 and
+	 * the s-leaders split, ..., n-1 given by the arrays; crossings within each
+	 * of the two groups are ignored. Uses the same sweep as
+	 * {@link #countSLeaderCrossings(double[], double[], double[], int)} or, if
+	 * one group is small, tests all pairs of leaders from different groups.
+	 *
+	 * @param leafX
+	 *            x-coordinates of the leaves
+	 * @param siteX
+	 *            x-coordinates of the sites
+	 * @param siteY
+	 *            y-coordinates of the sites
+	 * @param split
+	 *            index of the first leader of the second group
+	 * @param n
+	 *            number of leaders to consider (a prefix of the arrays)
+	 * @param byLeaf
+	 *            indices of the leaders sorted by leaf x-coordinate, or null if
+	 *            they should be sorted here
+	 * @return the number of crossings between leaders of different groups
+	 */
+	public static int countSLeaderCrossingsBetween(double[] leafX, double[] siteX,
+			double[] siteY, int split, int n, int[] byLeaf) {
+		if ((split <= 0) || (split >= n)) {
+			return 0;
+		}
+		if (isCheaperPairwise(split, n, S_PAIRS_PER_SWEEP_STEP)) {
+			return countSLeaderCrossingsPairwise(leafX, siteX, siteY, split, n);
+		}
+		return countSLeaderCrossings(leafX, siteX, siteY, split, n, byLeaf);
+	}
+
+	/**
+	 * Sweep of {@link #countSLeaderCrossings(double[], double[], double[], int)}
+	 * that only counts swaps between the two groups of leaders given by split,
+	 * or all swaps if split is negative.
+	 */
+	private static int countSLeaderCrossings(double[] leafX, double[] siteX, double[] siteY,
+			int split, int n, int[] order) {
+		if (n < 2) {
+			return 0;
+		}
+		for (int i = 0; i < n; i++) {
+			if (!(siteY[i] > 0)) {
+				return countSLeaderCrossingsPairwise(leafX, siteX, siteY, split, n);
+			}
+		}
+
+		if (order == null) {
+			order = sortedIndices(leafX, n);
+		}
+		for (int i = 1; i < n; i++) {
+			if (!(leafX[order[i - 1]] < leafX[order[i]])) {
+				return countSLeaderCrossingsPairwise(leafX, siteX, siteY, split, n);
+			}
+		}
+
+		// doubly linked list of active leaders in order along the sweep line
+		int[] prev = new int[n];
+		int[] next = new int[n];
+		boolean[] active = new boolean[n];
+		double[] slope = new double[n];
+		for (int i = 0; i < n; i++) {
+			int leader = order[i];
+			prev[leader] = (i > 0) ? order[i - 1] : -1;
+			next[leader] = (i < n - 1) ? order[i + 1] : -1;
+			active[leader] = true;
+			slope[leader] = (siteX[leader] - leafX[leader]) / siteY[leader];
+		}
+
+		EventQueue events = new EventQueue(3 * n);
+		for (int i = 0; i < n; i++) {
+			events.add(siteY[i], i, -1);
+		}
+		for (int i = 0; i < n - 1; i++) {
+			scheduleSwap(order[i], order[i + 1], 0, leafX, siteX, siteY, slope, events);
+		}
+
+		long maxSwaps = (split < 0) ? ((long) n) * n / PAIRWISE_COST_RATIO
+				: 2L * split * (n - split) / PAIRWISE_COST_RATIO;
+		long numberOfSwaps = 0;
+		int numberOfCrossings = 0;
+		while (!events.isEmpty()) {
+			double height = events.peekHeight();
+			int first = events.peekFirst();
+			int second = events.peekSecond();
+			events.poll();
+
+			if (second < 0) {
+				// end event: first leader leaves the sweep line
+				active[first] = false;
+				int left = prev[first];
+				int right = next[first];
+				if (left >= 0) {
+					next[left] = right;
+				}
+				if (right >= 0) {
+					prev[right] = left;
+				}
+				if ((left >= 0) && (right >= 0)) {
+					scheduleSwap(left, right, height, leafX, siteX, siteY, slope, events);
+				}
+			} else if (active[first] && active[second] && (next[first] == second)) {
+				// swap event: first and second cross
+				numberOfSwaps++;
+				if (numberOfSwaps > maxSwaps) {
+					return countSLeaderCrossingsPairwise(leafX, siteX, siteY, split, n);
+				}
+				if ((split < 0) || ((first < split) != (second < split))) {
+					numberOfCrossings++;
+				}
+				int left = prev[first];
+				int right = next[second];
+				next[second] = first;
+				prev[first] = second;
+				prev[second] = left;
+				next[first] = right;
+				if (left >= 0) {
+					next[left] = second;
+					scheduleSwap(left, second, height, leafX, siteX, siteY, slope, events);
+				}
+				if (right >= 0) {
+					prev[right] = first;
+					scheduleSwap(first, right, height, leafX, siteX, siteY, slope, events);
+				}
+			}
+		}
+
+		return numberOfCrossings;
+	}
+
+	/**
+	 * Schedules the swap of the two adjacent leaders if they have not been
+	 * swapped before (and so are still in the order of their leaves) and if
+	 * they cross.
+	 */
+	private static void scheduleSwap(int left, int right, double currentHeight, double[] leafX,
+			double[] siteX, double[] siteY, double[] slope, EventQueue events) {
+		if (leafX[left] > leafX[right]) {
+			// already crossed, and two segments cross at most once
+			return;
+		}
+		if (!LeaderKernel.sLeadersCross(leafX[left], siteX[left], siteY[left], leafX[right],
+				siteX[right], siteY[right])) {
+			return;
+		}
+
+		double lastHeight = Math.min(siteY[left], siteY[right]);
+		double height = (leafX[right] - leafX[left]) / (slope[left] - slope[right]);
+		if (!(height <= lastHeight)) {
+			// also catches rounding errors and parallel leaders
+			height = lastHeight;
+		}
+		events.add(Math.max(height, currentHeight), left, right);
+	}
+
+	/**
+	 * Counts the number of crossings between the s-leaders given by the arrays
+	 * by testing every pair of leaders.
+	 *
+	 * @param leafX
+	 *            x-coordinates of the leaves
+	 * @param siteX
+	 *            x-coordinates of the sites
+	 * @param siteY
+	 *            y-coordinates of the sites
+	 * @param n
+	 *            number of leaders to consider (a prefix of the arrays)
+	 * @return the number of crossings between the given s-leaders
+	 */
+	public static int countSLeaderCrossingsPairwise(double[] leafX, double[] siteX,
+			double[] siteY, int n) {
+		return countSLeaderCrossingsPairwise(leafX, siteX, siteY, -1, n);
+	}
+
+	/**
+	 * Tests all pairs of s-leaders from different groups, or all pairs if split
+	 * is negative.
+	 */
+	private static int countSLeaderCrossingsPairwise(double[] leafX, double[] siteX,
+			double[] siteY, int split, int n) {
+		int numberOfCrossings = 0;
+		int firstEnd = (split < 0) ? n : split;
+		for (int i = 0; i < firstEnd; i++) {
+			for (int j = (split < 0) ? i + 1 : split; j < n; j++) {
+				numberOfCrossings += LeaderKernel.sLeadersCross(leafX[i], siteX[i], siteY[i],
+						leafX[j], siteX[j], siteY[j]) ? 1 : 0;
+			}
+		}
+		return numberOfCrossings;
+	}
+
+	/**
+	 * Counts the number of crossings between the po-leaders given by the
+	 * arrays.
+	 *
+	 * A po-leader consists of a horizontal segment at the height of its site
+	 * and a vertical segment from there up to its leaf. Only a horizontal and a
+	 * vertical segment can cross: the horizontal segment of leader i crosses
+	 * the vertical segment of leader j if and only if leafX[j] lies between
+	 * leafX[i] and siteX[i] and siteY[i] <= siteY[j]. Processing the leaders by
+	 * decreasing site height and storing the leaves of processed leaders in a
+	 * binary indexed tree thus counts these (ordered) pairs in O(n log n). Two
+	 * leaders with sites at the same height can cross each other with both
+	 * horizontal segments; such pairs are only counted once.
+	 *
+	 * If a site lies on or above the line y = 0, the method falls back to
+	 * testing all pairs, since {@link LeaderKernel#segmentsIntersect} treats
+	 * any two segments of length zero as intersecting.
+	 *
+	 * @param leafX
+	 *            x-coordinates of the leaves
+	 * @param siteX
+	 *            x-coordinates of the sites
+	 * @param siteY
+	 *            y-coordinates of the sites
+	 * @param n
+	 *            number of leaders to consider (a prefix of the arrays)
+	 * @return the number of crossings between the given po-leaders
+	 */
+	public static int countPOLeaderCrossings(double[] leafX, double[] siteX, double[] siteY,
+			int n) {
+		return countPOLeaderCrossings(leafX, siteX, siteY, -1, n, null, null);
+	}
+
+	/**
+	 * Counts the number of crossings between the po-leaders 0, ..., split-1 and
+	 * the po-leaders split, ..., n-1 given by the arrays; crossings within each
+	 * of the two groups are ignored. Uses the same sweep as
+	 * {@link #countPOLeaderCrossings(double[], double[], double[], int)}, but
+	 * with one binary indexed tree per group, or, if one group is small, tests
+	 * all pairs of leaders from different groups.
+	 *
+	 * @param leafX
+	 *            x-coordinates of the leaves
+	 * @param siteX
+	 *            x-coordinates of the sites
+	 * @param siteY
+	 *            y-coordinates of the sites
+	 * @param split
+	 *            index of the first leader of the second group
+	 * @param n
+	 *            number of leaders to consider (a prefix of the arrays)
+	 * @param byLeaf
+	 *            indices of the leaders sorted by leaf x-coordinate, or null if
+	 *            they should be sorted here
+	 * @param byHeight
+	 *            indices of the leaders sorted by site y-coordinate, or null if
+	 *            they should be sorted here
+	 * @return the number of crossings between leaders of different groups
+	 */
+	public static int countPOLeaderCrossingsBetween(double[] leafX, double[] siteX,
+			double[] siteY, int split, int n, int[] byLeaf, int[] byHeight) {
+		if ((split <= 0) || (split >= n)) {
+			return 0;
+		}
+		if (isCheaperPairwise(split, n, PO_PAIRS_PER_SWEEP_STEP)) {
+			return countPOLeaderCrossingsPairwise(leafX, siteX, siteY, split, n);
+		}
+		return countPOLeaderCrossings(leafX, siteX, siteY, split, n, byLeaf, byHeight);
+	}
+
+	/**
+	 * Sweep of {@link #countPOLeaderCrossings(double[], double[], double[], int)}
+	 * that only counts crossings between the two groups of leaders given by
+	 * split, or all crossings if split is negative.
+	 */
+	private static int countPOLeaderCrossings(double[] leafX, double[] siteX, double[] siteY,
+			int split, int n, int[] byLeaf, int[] byHeight) {
+		if (n < 2) {
+			return 0;
+		}
+		for (int i = 0; i < n; i++) {
+			if (!(siteY[i] > 0)) {
+				return countPOLeaderCrossingsPairwise(leafX, siteX, siteY, split, n);
+			}
+		}
+
+		byLeaf = sortIfNeeded(leafX, n, byLeaf);
+		double[] sortedLeafX = new double[n];
+		int[] rankOfLeader = new int[n];
+		for (int k = 0; k < n; k++) {
+			sortedLeafX[k] = leafX[byLeaf[k]];
+			rankOfLeader[byLeaf[k]] = k;
+		}
+
+		byHeight = sortIfNeeded(siteY, n, byHeight);
+		// one tree per group; without groups all leaders are in the first
+		int[][] fenwick = new int[(split < 0) ? 1 : 2][n + 1];
+		long horizontalOverVertical = 0;
+		long countedTwice = 0;
+
+		int groupEnd = n;
+		while (groupEnd > 0) {
+			// group of leaders with same site height, processed top to bottom
+			double height = siteY[byHeight[groupEnd - 1]];
+			int groupStart = groupEnd - 1;
+			while ((groupStart > 0) && (siteY[byHeight[groupStart - 1]] == height)) {
+				groupStart--;
+			}
+
+			for (int k = groupStart; k < groupEnd; k++) {
+				int leader = byHeight[k];
+				fenwickAdd(fenwick[getGroup(leader, split)], rankOfLeader[leader]);
+			}
+			for (int k = groupStart; k < groupEnd; k++) {
+				int leader = byHeight[k];
+				int[] other = fenwick[getOtherGroup(leader, split)];
+				int from = lowerBound(sortedLeafX, Math.min(leafX[leader], siteX[leader]));
+				int to = upperBound(sortedLeafX, Math.max(leafX[leader], siteX[leader]));
+				horizontalOverVertical += fenwickSum(other, to) - fenwickSum(other, from);
+				if (split < 0) {
+					// the leader's own vertical segment
+					horizontalOverVertical--;
+				}
+			}
+			if (groupEnd - groupStart > 1) {
+				countedTwice += countMutualCrossings(leafX, siteX, byHeight, groupStart, groupEnd,
+						split);
+			}
+
+			groupEnd = groupStart;
+		}
+
+		return (int) (horizontalOverVertical - countedTwice);
+	}
+
+	/**
+	 * Counts the pairs of leaders with sites at the same height where each
+	 * horizontal segment crosses the vertical segment of the other leader, only
+	 * considering pairs from different groups if split is not negative. Going
+	 * through the leaders j by decreasing leaf x-coordinate, the leaders i left
+	 * of j whose horizontal segment reaches leafX[j] are stored in a binary
+	 * indexed tree per group, and then those whose leaf lies on the horizontal
+	 * segment of j are counted.
+	 */
+	private static long countMutualCrossings(double[] leafX, double[] siteX, int[] leaders,
+			int from, int to, int split) {
+		int size = to - from;
+		double[] groupLeafX = new double[size];
+		double[] groupReach = new double[size];
+		for (int k = 0; k < size; k++) {
+			int leader = leaders[from + k];
+			groupLeafX[k] = leafX[leader];
+			groupReach[k] = Math.max(leafX[leader], siteX[leader]);
+		}
+
+		int[] byLeaf = sortedIndices(groupLeafX, size);
+		double[] sortedLeafX = new double[size];
+		int[] rank = new int[size];
+		for (int k = 0; k < size; k++) {
+			sortedLeafX[k] = groupLeafX[byLeaf[k]];
+			rank[byLeaf[k]] = k;
+		}
+		int[] byReach = sortedIndices(groupReach, size);
+
+		int[][] fenwick = new int[(split < 0) ? 1 : 2][size + 1];
+		long mutual = 0;
+		int nextToInsert = size - 1;
+		for (int k = size - 1; k >= 0; k--) {
+			int j = byLeaf[k];
+			while ((nextToInsert >= 0) && (groupReach[byReach[nextToInsert]] >= groupLeafX[j])) {
+				int i = byReach[nextToInsert];
+				fenwickAdd(fenwick[getGroup(leaders[from + i], split)], rank[i]);
+				nextToInsert--;
+			}
+			int leaderJ = leaders[from + j];
+			int[] other = fenwick[getOtherGroup(leaderJ, split)];
+			int left = lowerBound(sortedLeafX, Math.min(leafX[leaderJ], siteX[leaderJ]));
+			if (left < k) {
+				mutual += fenwickSum(other, k) - fenwickSum(other, left);
+			}
+		}
+		return mutual;
+	}
+
+	/**
+	 * Counts the number of crossings between the po-leaders given by the
+	 * arrays by testing every pair of leaders.
+	 *
+	 * @param leafX
+	 *            x-coordinates of the leaves
+	 * @param siteX
+	 *            x-coordinates of the sites
+	 * @param siteY
+	 *            y-coordinates of the sites
+	 * @param n
+	 *            number of leaders to consider (a prefix of the arrays)
+	 * @return the number of crossings between the given po-leaders
+	 */
+	public static int countPOLeaderCrossingsPairwise(double[] leafX, double[] siteX,
+			double[] siteY, int n) {
+		return countPOLeaderCrossingsPairwise(leafX, siteX, siteY, -1, n);
+	}
+
+	/**
+	 * Tests all pairs of po-leaders from different groups, or all pairs if split
+	 * is negative.
+	 */
+	private static int countPOLeaderCrossingsPairwise(double[] leafX, double[] siteX,
+			double[] siteY, int split, int n) {
+		int numberOfCrossings = 0;
+		int firstEnd = (split < 0) ? n : split;
+		for (int i = 0; i < firstEnd; i++) {
+			for (int j = (split < 0) ? i + 1 : split; j < n; j++) {
+				numberOfCrossings += LeaderKernel.poLeadersCross(leafX[i], siteX[i], siteY[i],
+						leafX[j], siteX[j], siteY[j]) ? 1 : 0;
+			}
+		}
+		return numberOfCrossings;
+	}
+
+	private static int getGroup(int leader, int split) {
+		return ((split < 0) || (leader < split)) ? 0 : 1;
+	}
+
+	private static int getOtherGroup(int leader, int split) {
+		return (split < 0) ? 0 : 1 - getGroup(leader, split);
+	}
+
+	/**
+	 * Returns whether testing all pairs between the groups of sizes split and
+	 * n - split is expected to be faster than a sweep over all n leaders, if a
+	 * step of the sweep costs about as much as testing the given number of
+	 * pairs.
+	 */
+	private static boolean isCheaperPairwise(int split, int n, int pairsPerSweepStep) {
+		long log = 64 - Long.numberOfLeadingZeros(n);
+		return ((long) split) * (n - split) <= pairsPerSweepStep * n * log;
+	}
+
+	private static void fenwickAdd(int[] fenwick, int index) {
+		for (int i = index + 1; i < fenwick.length; i += i & (-i)) {
+			fenwick[i]++;
+		}
+	}
+
+	/** Returns the number of stored entries with index smaller than the given one. */
+	private static int fenwickSum(int[] fenwick, int index) {
+		int sum = 0;
+		for (int i = index; i > 0; i -= i & (-i)) {
+			sum += fenwick[i];
+		}
+		return sum;
+	}
+
+	/** Returns the first index whose value is at least the given value. */
+	private static int lowerBound(double[] sorted, double value) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/** Returns the first index whose value is greater than the given value. */
+	private static int upperBound(double[] sorted, double value) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the given order if the keys are sorted along it, and otherwise
+	 * the indices sorted by their keys.
+	 */
+	private static int[] sortIfNeeded(double[] keys, int n, int[] order) {
+		if (order == null) {
+			return sortedIndices(keys, n);
+		}
+		for (int k = 1; k < n; k++) {
+			if (keys[order[k - 1]] > keys[order[k]]) {
+				return sortedIndices(keys, n);
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the indices 0, ..., n-1 sorted by their keys. Stable merge sort,
+	 * with a linear time check for already sorted keys, which is the common
+	 * case for leaves given in tree order.
+	 */
+	static int[] sortedIndices(double[] keys, int n) {
+		int[] indices = new int[n];
+		sortIndices(keys, n, indices, null);
+		return indices;
+	}
+
+	/**
+	 * Sorts the indices 0, ..., n-1 by their keys into the first n entries of
+	 * the given array, like {@link #sortedIndices(double[], int)} but without
+	 * allocating if a buffer is given, for callers that sort repeatedly.
+	 *
+	 * @param keys
+	 *            keys of the indices
+	 * @param n
+	 *            number of indices
+	 * @param indices
+	 *            array of length at least n for the sorted indices
+	 * @param buffer
+	 *            array of length at least n used while sorting, or null
+	 */
+	public static void sortIndices(double[] keys, int n, int[] indices, int[] buffer) {
+		boolean sorted = true;
+		for (int i = 0; i < n; i++) {
+			indices[i] = i;
+			if ((i > 0) && (keys[i - 1] > keys[i])) {
+				sorted = false;
+			}
+		}
+		if (sorted) {
+			return;
+		}
+
+		if (buffer == null) {
+			buffer = new int[n];
+		}
+		int[] source = indices;
+		int[] target = buffer;
+		for (int width = 1; width < n; width *= 2) {
+			for (int low = 0; low < n; low += 2 * width) {
+				int mid = Math.min(low + width, n);
+				int high = Math.min(low + 2 * width, n);
+				int i = low;
+				int j = mid;
+				int k = low;
+				while ((i < mid) && (j < high)) {
+					target[k++] = (keys[source[j]] < keys[source[i]]) ? source[j++]
+							: source[i++];
+				}
+				while (i < mid) {
+					target[k++] = source[i++];
+				}
+				while (j < high) {
+					target[k++] = source[j++];
+				}
+			}
+			int[] temp = source;
+			source = target;
+			target = temp;
+		}
+		if (source != indices) {
+			System.arraycopy(source, 0, indices, 0, n);
+		}
+	}
+
+	/**
+	 * Binary min-heap of sweep events ordered by height; at equal height swap
+	 * events come before end events, so that leaders touching at the end of a
+	 * leader are still swapped (and counted).
+	 */
+	private static class EventQueue {
+
+		private double[] heights;
+		private int[] firsts;
+		/** Second leader of a swap event, or -1 for an end event. */
+		private int[] seconds;
+		private int size = 0;
+
+		EventQueue(int capacity) {
+			heights = new double[capacity];
+			firsts = new int[capacity];
+			seconds = new int[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double peekHeight() {
+			return heights[0];
+		}
+
+		int peekFirst() {
+			return firsts[0];
+		}
+
+		int peekSecond() {
+			return seconds[0];
+		}
+
+		void add(double height, int first, int second) {
+			if (size == heights.length) {
+				int capacity = 2 * size;
+				heights = Arrays.copyOf(heights, capacity);
+				firsts = Arrays.copyOf(firsts, capacity);
+				seconds = Arrays.copyOf(seconds, capacity);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!isBefore(height, second, heights[parent], seconds[parent])) {
+					break;
+				}
+				set(i, heights[parent], firsts[parent], seconds[parent]);
+				i = parent;
+			}
+			set(i, height, first, second);
+		}
+
+		void poll() {
+			size--;
+			double height = heights[size];
+			int first = firsts[size];
+			int second = seconds[size];
+			int i = 0;
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if ((child + 1 < size) && isBefore(heights[child + 1], seconds[child + 1],
+						heights[child], seconds[child])) {
+					child++;
+				}
+				if (!isBefore(heights[child], seconds[child], height, second)) {
+					break;
+				}
+				set(i, heights[child], firsts[child], seconds[child]);
+				i = child;
+			}
+			set(i, height, first, second);
+		}
+
+		private void set(int i, double height, int first, int second) {
+			heights[i] = height;
+			firsts[i] = first;
+			seconds[i] = second;
+		}
+
+		private static boolean isBefore(double height, int second, double otherHeight,
+				int otherSecond) {
+			if (height != otherHeight) {
+				return height < otherHeight;
+			}
+			return (second >= 0) && (otherSecond < 0);
+		}
+	}
+}
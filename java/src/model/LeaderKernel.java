@@ -0,0 +1,227 @@
+package model;
+
+import model.Leader.GeophylogenyLeaderType;
+
+/**
+ * This class stores the leaders of a drawing of a geophylogeny as primitive
+ * arrays, where leader i connects the leaf at (leafX[i], 0) with the site at
+ * (siteX[i], siteY[i]), and provides static, allocation-free predicates to
+ * test whether two s- or po-leaders cross.
+ *
+ * The predicates perform exactly the same floating point operations as
+ * {@link java.awt.geom.Line2D#linesIntersect} on the segments of the leaders
+ * and thus give the same results also for touching and collinear leaders.
+ */
+public class LeaderKernel {
+
+	private final GeophylogenyLeaderType type;
+	private final double[] leafX;
+	private final double[] siteX;
+	private final double[] siteY;
+	private int size;
+
+	/**
+	 * Creates an empty kernel with room for the given number of leaders.
+	 *
+	 * @param type
+	 *            type of the leaders
+	 * @param capacity
+	 *            maximum number of leaders
+	 */
+	public LeaderKernel(GeophylogenyLeaderType type, int capacity) {
+		this.type = type;
+		this.leafX = new double[capacity];
+		this.siteX = new double[capacity];
+		this.siteY = new double[capacity];
+	}
+
+	/**
+	 * Creates a kernel with the leaders of the current drawing of the given
+	 * geophylogeny, where the leaders are in the order of the leaves in the
+	 * tree and the leaves have their current x-coordinates.
+	 *
+	 * @param geophylogeny
+	 *            geophylogeny whose leaders are stored
+	 * @return a kernel with the leaders of the given geophylogeny
+	 */
+	public static LeaderKernel fromGeophylogeny(Geophylogeny geophylogeny) {
+		Vertex[] leaves = geophylogeny.getTree().getLeavesInOrder();
+		LeaderKernel kernel = new LeaderKernel(geophylogeny.getLeaderType(), leaves.length);
+		for (Vertex leaf : leaves) {
+			kernel.add(leaf.getX(), geophylogeny.getSiteOfLeaf(leaf));
+		}
+		return kernel;
+	}
+
+	/**
+	 * Creates a kernel with the leaders of the drawing of the given
+	 * geophylogeny with the current embedding of the given compact tree of its
+	 * tree, where the leaders are in the order of the leaves.
+	 *
+	 * @param compactTree
+	 *            compact tree of the tree of the geophylogeny
+	 * @param geophylogeny
+	 *            geophylogeny whose leaders are stored
+	 * @return a kernel with the leaders of the given drawing
+	 */
+	public static LeaderKernel fromCompactTree(CompactTree compactTree,
+			Geophylogeny geophylogeny) {
+		int[] leaves = compactTree.getLeavesInOrder();
+		Site[] sites = geophylogeny.getSites();
+		LeaderKernel kernel = new LeaderKernel(geophylogeny.getLeaderType(), leaves.length);
+		for (int position = 0; position < leaves.length; position++) {
+			kernel.add(geophylogeny.getXByPosition(position), sites[leaves[position]]);
+		}
+		return kernel;
+	}
+
+	public GeophylogenyLeaderType getType() {
+		return type;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public void add(double leafXCoordinate, Site site) {
+		add(leafXCoordinate, site.x, site.y);
+	}
+
+	public void add(double leafXCoordinate, double siteXCoordinate, double siteYCoordinate) {
+		leafX[size] = leafXCoordinate;
+		siteX[size] = siteXCoordinate;
+		siteY[size] = siteYCoordinate;
+		size++;
+	}
+
+	public double[] getLeafX() {
+		return leafX;
+	}
+
+	public double[] getSiteX() {
+		return siteX;
+	}
+
+	public double[] getSiteY() {
+		return siteY;
+	}
+
+	/**
+	 * Returns whether the leaders i and j of this kernel cross.
+	 *
+	 * @param i
+	 *            index of first leader
+	 * @param j
+	 *            index of second leader
+	 * @return whether the leaders i and j cross
+	 */
+	public boolean crosses(int i, int j) {
+		return leadersCross(type, leafX[i], siteX[i], siteY[i], leafX[j], siteX[j], siteY[j]);
+	}
+
+	/**
+	 * Counts the number of crossings between the leaders of this kernel with
+	 * the sweep-based {@link LeaderCrossingCounter}.
+	 *
+	 * @return the number of crossings between the leaders of this kernel
+	 */
+	public int countCrossings() {
+		return switch (type) {
+		case S -> LeaderCrossingCounter.countSLeaderCrossings(leafX, siteX, siteY, size);
+		case PO -> LeaderCrossingCounter.countPOLeaderCrossings(leafX, siteX, siteY, size);
+		default -> 0;
+		};
+	}
+
+	/**
+	 * Counts the number of crossings between the leaders of this kernel by
+	 * testing every pair of leaders.
+	 *
+	 * @return the number of crossings between the leaders of this kernel
+	 */
+	public int countCrossingsPairwise() {
+		return switch (type) {
+		case S -> LeaderCrossingCounter.countSLeaderCrossingsPairwise(leafX, siteX, siteY, size);
+		case PO -> LeaderCrossingCounter.countPOLeaderCrossingsPairwise(leafX, siteX, siteY, size);
+		default -> 0;
+		};
+	}
+
+	/**
+	 * Returns whether two leaders of the given type cross. Unsupported leader
+	 * types never cross.
+	 */
+	public static boolean leadersCross(GeophylogenyLeaderType type, double leafX1,
+			double siteX1, double siteY1, double leafX2, double siteX2, double siteY2) {
+		if (type == GeophylogenyLeaderType.S) {
+			return sLeadersCross(leafX1, siteX1, siteY1, leafX2, siteX2, siteY2);
+		} else if (type == GeophylogenyLeaderType.PO) {
+			return poLeadersCross(leafX1, siteX1, siteY1, leafX2, siteX2, siteY2);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the two s-leaders, that is, the straight-line segments
+	 * from (leafX, 0) to (siteX, siteY), cross.
+	 */
+	public static boolean sLeadersCross(double leafX1, double siteX1, double siteY1,
+			double leafX2, double siteX2, double siteY2) {
+		return segmentsIntersect(leafX1, 0, siteX1, siteY1, leafX2, 0, siteX2, siteY2);
+	}
+
+	/**
+	 * Returns whether the two po-leaders, that is, the horizontal segment from
+	 * (siteX, siteY) to (leafX, siteY) followed by the vertical segment up to
+	 * (leafX, 0), cross. Like for {@link Leader}, only a horizontal and a
+	 * vertical segment can cross.
+	 */
+	public static boolean poLeadersCross(double leafX1, double siteX1, double siteY1,
+			double leafX2, double siteX2, double siteY2) {
+		return segmentsIntersect(leafX1, siteY1, siteX1, siteY1, leafX2, 0, leafX2, siteY2)
+				|| segmentsIntersect(leafX1, 0, leafX1, siteY1, leafX2, siteY2, siteX2, siteY2);
+	}
+
+	/**
+	 * Returns whether the segment from (x1, y1) to (x2, y2) intersects the
+	 * segment from (x3, y3) to (x4, y4); same computation as
+	 * {@link java.awt.geom.Line2D#linesIntersect}.
+	 */
+	public static boolean segmentsIntersect(double x1, double y1, double x2, double y2,
+			double x3, double y3, double x4, double y4) {
+		return ((relativeCCW(x1, y1, x2, y2, x3, y3) * relativeCCW(x1, y1, x2, y2, x4, y4) <= 0)
+				&& (relativeCCW(x3, y3, x4, y4, x1, y1)
+						* relativeCCW(x3, y3, x4, y4, x2, y2) <= 0));
+	}
+
+	/**
+	 * Returns on which side of the segment from (x1, y1) to (x2, y2) the point
+	 * (px, py) lies; same computation as
+	 * {@link java.awt.geom.Line2D#relativeCCW}.
+	 */
+	private static int relativeCCW(double x1, double y1, double x2, double y2, double px,
+			double py) {
+		x2 -= x1;
+		y2 -= y1;
+		px -= x1;
+		py -= y1;
+		double ccw = px * y2 - py * x2;
+		if (ccw == 0.0) {
+			// point is collinear, classify based on which side of the segment
+			ccw = px * x2 + py * y2;
+			if (ccw > 0.0) {
+				px -= x2;
+				py -= y2;
+				ccw = px * x2 + py * y2;
+				if (ccw < 0.0) {
+					ccw = 0.0;
+				}
+			}
+		}
+		return (ccw < 0.0) ? -1 : ((ccw > 0.0) ? 1 : 0);
+	}
+}
@@ -10,9 +10,42 @@ public class Tree {
 	private final int stateNumber;
 	private Vertex root;
 	private Vertex[] vertices; // indexed by id-1
+
+	private Vertex[] innerVertices;
+
+	/**
+	 * Leaves in the order of the current embedding, where the clade of each
+	 * vertex is the interval [cladeStart, cladeStart + cladeSize); for a leaf,
+	 * cladeStart is its position. A rotation updates both in place for the
+	 * subtree of the rotated vertex, until the rotated subtrees add up to more
+	 * than the tree; then both are marked as invalid and recomputed in O(n)
+	 * time on the next access. Without rotations, concurrent reads are safe.
+	 */
+	private Vertex[] leavesInOrder;
+	private int[] cladeStart; // indexed by id-1
+	private volatile boolean cladesValid = false;
+	private int rotatedSubtreeSizes = 0;
+
+	/**
+	 * Vertices rotated since the x-coordinates were last computed, in order of
+	 * their rotations, so that only their subtrees and ancestors have to be
+	 * updated; null if the x-coordinates have to be computed from scratch.
+	 */
+	private Vertex[] rotatedSinceLayout = null;
+	private int numberOfRotatedSinceLayout = 0;
+
+	/**
+	 * Version of the x-coordinates, which changes with each layout and each
+	 * x-coordinate set outside of a layout; a geophylogeny may only update
+	 * the layout incrementally if it computed the current version itself.
+	 */
+	private long layoutVersion = 0;
 	
 	private double maxDepth = -1;
 
+	/** Built on the first lowest common ancestor query. */
+	private volatile LCAIndex lcaIndex = null;
+
 	private int numberOfVertices;
 	private int numberOfLeaves;
 	private String name;
@@ -28,13 +61,19 @@ public class Tree {
 		while (!queue.isEmpty()) {
 			Vertex current = queue.poll();
 			this.vertices[current.getID() - 1] = current;
+			current.setTree(this);
 			if (!current.isLeaf()) {
 				queue.add(current.getFirstChild());
 				queue.add(current.getSecondChild());
 			}
 		}
 
-		initDiscreteDepths(this.root, 0);
+		initDiscreteDepths();
+
+		this.innerVertices = Arrays.copyOfRange(vertices, numberOfLeaves, numberOfVertices);
+		this.leavesInOrder = new Vertex[this.numberOfLeaves];
+		this.cladeStart = new int[this.numberOfVertices];
+		validateClades();
 
 	}
 
@@ -59,8 +98,14 @@ public class Tree {
 		return vertices;
 	}
 
+	/**
+	 * Returns the inner vertices of this tree ordered by their indices. The
+	 * array is shared and must not be changed.
+	 * 
+	 * @return the inner vertices of this tree (not a copy)
+	 */
 	public Vertex[] getInnnerVertices() {
-		return Arrays.copyOfRange(vertices, numberOfLeaves, numberOfVertices);
+		return innerVertices;
 	}
 
 	/**
@@ -82,22 +127,163 @@ public class Tree {
 	 *         ordered based on the current implicit embedding of this tree
 	 */
 	public Vertex[] getLeavesInTreeOrder() {
-		Vertex[] leaves = new Vertex[this.numberOfLeaves];
-		addLeavesInOrder(this.getRoot(), leaves, 0);
+		return getLeavesInOrder().clone();
+	}
 
-		return leaves;
+	/**
+	 * Returns the leaves of this tree in the order of the current embedding;
+	 * the clade of each vertex is a contiguous interval of this array. The
+	 * array is shared and must not be changed.
+	 * 
+	 * @return the leaves of this tree in order (not a copy)
+	 */
+	public Vertex[] getLeavesInOrder() {
+		validateClades();
+		return leavesInOrder;
 	}
 
-	private void addLeavesInOrder(Vertex vertex, Vertex[] leaves, int position) {
+	/**
+	 * Returns the position of the leftmost leaf of the clade of the given
+	 * vertex in the current embedding.
+	 * 
+	 * @param vertex
+	 *            vertex of this tree
+	 * @return start (inclusive) of the clade interval of the given vertex
+	 */
+	public int getCladeStart(Vertex vertex) {
+		validateClades();
+		return cladeStart[vertex.getIndex()];
+	}
+
+	/**
+	 * Returns the position after the rightmost leaf of the clade of the given
+	 * vertex in the current embedding.
+	 * 
+	 * @param vertex
+	 *            vertex of this tree
+	 * @return end (exclusive) of the clade interval of the given vertex
+	 */
+	public int getCladeEnd(Vertex vertex) {
+		return getCladeStart(vertex) + vertex.getCladeSize();
+	}
+
+	/**
+	 * Updates the leaf order and clade intervals after the given vertex has
+	 * been rotated. Only the subtree of the vertex changes, so this takes
+	 * O(subtree size) time instead of a full recomputation.
+	 */
+	void rotated(Vertex vertex) {
 		if (vertex.isLeaf()) {
-			leaves[position] = vertex;
-		} else {
-			addLeavesInOrder(vertex.getLeftChild(), leaves, position);
-			addLeavesInOrder(vertex.getRightChild(), leaves,
-					position + vertex.getLeftChild().getCladeSize());
+			return;
+		}
+		if (!cladesValid) {
+			rotatedSinceLayout = null;
+			return;
+		}
+		rotatedSubtreeSizes += vertex.getSubtreeSize();
+		if (rotatedSubtreeSizes > numberOfVertices) {
+			// recomputing everything once is cheaper from here on
+			cladesValid = false;
+			rotatedSinceLayout = null;
+			return;
+		}
+
+		Vertex left = vertex.getLeftChild();
+		Vertex right = vertex.getRightChild();
+		int start = cladeStart[vertex.getIndex()];
+		shiftClades(left, start - cladeStart[left.getIndex()]);
+		shiftClades(right, start + left.getCladeSize() - cladeStart[right.getIndex()]);
+
+		if (rotatedSinceLayout != null) {
+			rotatedSinceLayout[numberOfRotatedSinceLayout++] = vertex;
+		}
+	}
+
+	private void shiftClades(Vertex subtreeRoot, int shift) {
+		Vertex[] stack = new Vertex[subtreeRoot.getSubtreeSize()];
+		int size = 0;
+		stack[size++] = subtreeRoot;
+		while (size > 0) {
+			Vertex vertex = stack[--size];
+			cladeStart[vertex.getIndex()] += shift;
+			if (vertex.isLeaf()) {
+				leavesInOrder[cladeStart[vertex.getIndex()]] = vertex;
+			} else {
+				stack[size++] = vertex.getFirstChild();
+				stack[size++] = vertex.getSecondChild();
+			}
+		}
+	}
+
+	private void validateClades() {
+		if (cladesValid) {
+			return;
+		}
+		// trees shared read-only by threads may validate concurrently
+		synchronized (this) {
+			if (!cladesValid) {
+				computeClades();
+			}
 		}
 	}
 
+	private void computeClades() {
+		Vertex[] stack = new Vertex[numberOfVertices];
+		int size = 0;
+		int position = 0;
+		stack[size++] = root;
+		while (size > 0) {
+			Vertex vertex = stack[--size];
+			cladeStart[vertex.getIndex()] = position;
+			if (vertex.isLeaf()) {
+				leavesInOrder[position++] = vertex;
+			} else {
+				stack[size++] = vertex.getRightChild();
+				stack[size++] = vertex.getLeftChild();
+			}
+		}
+		rotatedSubtreeSizes = 0;
+		cladesValid = true;
+	}
+
+	/**
+	 * Returns the vertices rotated since the last call of
+	 * {@link #startLayout()}, in order of their rotations, where only the first
+	 * {@link #getNumberOfRotatedSinceLayout()} entries are set; null if the
+	 * layout has to be computed from scratch.
+	 */
+	Vertex[] getRotatedSinceLayout() {
+		return rotatedSinceLayout;
+	}
+
+	int getNumberOfRotatedSinceLayout() {
+		return numberOfRotatedSinceLayout;
+	}
+
+	/**
+	 * Starts tracking rotations for the next update of the layout, that is,
+	 * the x-coordinates, which is about to be brought up to date.
+	 *
+	 * @return the version of the new layout
+	 */
+	long startLayout() {
+		validateClades();
+		if (rotatedSinceLayout == null) {
+			rotatedSinceLayout = new Vertex[numberOfVertices];
+		}
+		numberOfRotatedSinceLayout = 0;
+		return ++layoutVersion;
+	}
+
+	long getLayoutVersion() {
+		return layoutVersion;
+	}
+
+	/** Called when an x-coordinate is set outside of a layout. */
+	void invalidateLayout() {
+		layoutVersion++;
+	}
+
 	public Vertex getRoot() {
 		return root;
 	}
@@ -110,12 +296,39 @@ public class Tree {
 		return discreteDepth;
 	}
 
-	private void initDiscreteDepths(Vertex vertex, int discreteDepth) {
-		vertex.setDiscreteDepth(discreteDepth);
-		if (!vertex.isLeaf()) {
-			initDiscreteDepths(vertex.getFirstChild(), discreteDepth + 1);
-			initDiscreteDepths(vertex.getSecondChild(), discreteDepth + 1);
+	private void initDiscreteDepths() {
+		// parents before children
+		for (Vertex vertex : getVerticesInPreOrder()) {
+			if (vertex.hasParent()) {
+				vertex.setDiscreteDepth(vertex.getParent().getDiscreteDepth() + 1);
+			} else {
+				vertex.setDiscreteDepth(0);
+			}
+		}
+	}
+
+	/**
+	 * Returns the vertices of this tree in pre-order, where the first child of
+	 * each inner vertex is visited before its second child. Computed with an
+	 * explicit stack, so that also very deep trees can be traversed.
+	 * 
+	 * @return the vertices of this tree in pre-order
+	 */
+	public Vertex[] getVerticesInPreOrder() {
+		Vertex[] order = new Vertex[numberOfVertices];
+		Vertex[] stack = new Vertex[numberOfVertices];
+		int size = 0;
+		int numOrdered = 0;
+		stack[size++] = root;
+		while (size > 0) {
+			Vertex vertex = stack[--size];
+			order[numOrdered++] = vertex;
+			if (!vertex.isLeaf()) {
+				stack[size++] = vertex.getSecondChild();
+				stack[size++] = vertex.getFirstChild();
+			}
 		}
+		return order;
 	}
 
 	/**
@@ -123,16 +336,11 @@ public class Tree {
 	 * not assume that is a cladogram, but can also be a phylogram.
 	 */
 	public void initDepths() {
-		this.initDepths(root);
-	}
-
-	private void initDepths(Vertex vertex) {
-		if (vertex.hasParent()) {
-			vertex.setDepth(vertex.getParent().getDepth() + vertex.getBranchLengthIncoming());
-		}
-		if (!vertex.isLeaf()) {
-			initDepths(vertex.getFirstChild());
-			initDepths(vertex.getSecondChild());
+		// parents before children
+		for (Vertex vertex : getVerticesInPreOrder()) {
+			if (vertex.hasParent()) {
+				vertex.setDepth(vertex.getParent().getDepth() + vertex.getBranchLengthIncoming());
+			}
 		}
 	}
 
@@ -160,20 +368,8 @@ public class Tree {
 	}
 
 	public int[] getPositionsByIndex() {
-		int[] positionsByIndex = new int[this.numberOfLeaves];
-		getPositionByIndexForSubtree(getRoot(), positionsByIndex, 0);
-
-		return positionsByIndex;
-	}
-
-	private void getPositionByIndexForSubtree(Vertex vertex, int[] positionsByIndex, int position) {
-		if (!vertex.isLeaf()) {
-			getPositionByIndexForSubtree(vertex.getLeftChild(), positionsByIndex, position);
-			getPositionByIndexForSubtree(vertex.getRightChild(), positionsByIndex,
-					position + vertex.getLeftChild().getCladeSize());
-		} else {
-			positionsByIndex[vertex.getIndex()] = position;
-		}
+		validateClades();
+		return Arrays.copyOf(cladeStart, numberOfLeaves);
 	}
 
 	public int getStateNumber() {
@@ -188,7 +384,69 @@ public class Tree {
 		return this.name;
 	}
 
+	/**
+	 * Returns the lowest common ancestor of the given vertices in O(1) time;
+	 * the first query builds an index in O(n log n) time.
+	 * 
+	 * @param first
+	 *            vertex of this tree
+	 * @param second
+	 *            vertex of this tree
+	 * @return the lowest common ancestor of the given vertices
+	 */
 	public Vertex getLCA(Vertex first, Vertex second) {
+		return getLCAIndex().getLCA(first, second);
+	}
+
+	/**
+	 * Returns the lowest common ancestors of the given pairs of vertices, that
+	 * is, of firsts[i] and seconds[i] for each i.
+	 * 
+	 * @param firsts
+	 *            first vertices of the pairs
+	 * @param seconds
+	 *            second vertices of the pairs
+	 * @return the lowest common ancestor of each pair
+	 */
+	public Vertex[] getLCAs(Vertex[] firsts, Vertex[] seconds) {
+		LCAIndex index = getLCAIndex();
+		Vertex[] lcas = new Vertex[firsts.length];
+		for (int i = 0; i < firsts.length; i++) {
+			lcas[i] = index.getLCA(firsts[i], seconds[i]);
+		}
+		return lcas;
+	}
+
+	/**
+	 * Returns the indices of the lowest common ancestors of the given pairs of
+	 * vertex indices, that is, of firsts[i] and seconds[i] for each i.
+	 * 
+	 * @param firsts
+	 *            indices of the first vertices of the pairs
+	 * @param seconds
+	 *            indices of the second vertices of the pairs
+	 * @return the index of the lowest common ancestor of each pair
+	 */
+	public int[] getLCAIndices(int[] firsts, int[] seconds) {
+		LCAIndex index = getLCAIndex();
+		int[] lcas = new int[firsts.length];
+		for (int i = 0; i < firsts.length; i++) {
+			lcas[i] = index.getLCA(firsts[i], seconds[i]).getIndex();
+		}
+		return lcas;
+	}
+
+	/**
+	 * Returns the lowest common ancestor of the given vertices by walking up
+	 * from the deeper vertex, which takes O(depth) time but no preprocessing.
+	 * 
+	 * @param first
+	 *            vertex of this tree
+	 * @param second
+	 *            vertex of this tree
+	 * @return the lowest common ancestor of the given vertices
+	 */
+	public Vertex getLCAByWalking(Vertex first, Vertex second) {
 		while (first != second) {
 			if (first.getDiscreteDepth() > second.getDiscreteDepth()) {
 				first = first.getParent();
@@ -200,75 +458,170 @@ public class Tree {
 		return first;
 	}
 
-	public void resetCoordinates() {
-		resetHelper(this.root);
+	private LCAIndex getLCAIndex() {
+		LCAIndex index = lcaIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = lcaIndex;
+				if (index == null) {
+					index = new LCAIndex(this);
+					lcaIndex = index;
+				}
+			}
+		}
+		return index;
 	}
 
-	private void resetHelper(Vertex vertex) {
-		vertex.setUnfixed();
-		vertex.setX(-1);
-		vertex.setY(-1);
-		if (!vertex.isLeaf()) {
-			resetHelper(vertex.getFirstChild());
-			resetHelper(vertex.getSecondChild());
+	public void resetCoordinates() {
+		rotatedSinceLayout = null;
+		for (Vertex vertex : vertices) {
+			vertex.setUnfixed();
+			vertex.setX(-1);
+			vertex.setY(-1);
 		}
 	}
 
 	public void randomizeEmbedding(Random random) {
-		randomizeEmbeddingHelper(this.root, random);
+		// same order of random choices as a recursive pre-order traversal
+		for (Vertex vertex : getVerticesInPreOrder()) {
+			if (random.nextBoolean()) {
+				vertex.rotate();
+			}
+		}
 	}
 
-	private void randomizeEmbeddingHelper(Vertex vertex, Random random) {
-		if (random.nextBoolean()) {
-			vertex.rotate();
+	/**
+	 * Moves vertices apart whose vertical edges are horizontally closer than
+	 * the given threshold and overlap vertically, in one pass over all pairs.
+	 * Only pairs that are within the threshold when the pass starts are
+	 * considered; they are found with a sweep over the vertices sorted by x,
+	 * so a pass takes O(V log V + P) time for P such pairs. The pairs are
+	 * handled in the same order and with the same moves as in
+	 * {@link #fixVerticalOverlapsPairwise(double)}, but unlike there, pairs
+	 * that only come within the threshold by a move of this pass are left to
+	 * the next pass, so the result of a single pass can differ. Use
+	 * {@link #fixVerticalOverlaps(double, int)} to repeat passes until no
+	 * overlaps remain.
+	 * 
+	 * @param threshold
+	 *            minimum horizontal distance between vertical edges
+	 * @return the number of moves made
+	 */
+	public int fixVerticalOverlaps(double threshold) {
+		rotatedSinceLayout = null;
+		double[] x = new double[numberOfVertices];
+		for (int i = 0; i < numberOfVertices; i++) {
+			x[i] = vertices[i].getX();
 		}
-		if (!vertex.isLeaf()) {
-			randomizeEmbeddingHelper(vertex.getFirstChild(), random);
-			randomizeEmbeddingHelper(vertex.getSecondChild(), random);
+		int[] byX = LeaderCrossingCounter.sortedIndices(x, numberOfVertices);
+
+		// candidate pairs (i, j) with i < j, encoded as i * V + j
+		long[] pairs = new long[numberOfVertices];
+		int numberOfPairs = 0;
+		for (int a = 0; a < numberOfVertices; a++) {
+			int u = byX[a];
+			for (int b = a + 1; b < numberOfVertices && x[byX[b]] - x[u] < threshold; b++) {
+				int v = byX[b];
+				if (numberOfPairs == pairs.length) {
+					pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+				}
+				pairs[numberOfPairs++] = (long) Math.min(u, v) * numberOfVertices + Math.max(u, v);
+			}
 		}
+		Arrays.sort(pairs, 0, numberOfPairs);
+
+		int numberOfMoves = 0;
+		for (int p = 0; p < numberOfPairs; p++) {
+			Vertex u = vertices[(int) (pairs[p] / numberOfVertices)];
+			Vertex v = vertices[(int) (pairs[p] % numberOfVertices)];
+			if (fixVerticalOverlap(u, v, threshold)) {
+				numberOfMoves++;
+			}
+		}
+		return numberOfMoves;
 	}
 
-	public void fixVerticalOverlaps(double threshold) {
+	/**
+	 * Repeats {@link #fixVerticalOverlaps(double)} until a pass makes no move,
+	 * since moves can create new overlaps, or until the given number of passes
+	 * has been made.
+	 * 
+	 * @param threshold
+	 *            minimum horizontal distance between vertical edges
+	 * @param maxPasses
+	 *            maximum number of passes
+	 * @return whether the last pass made no move, that is, no overlaps remain
+	 */
+	public boolean fixVerticalOverlaps(double threshold, int maxPasses) {
+		for (int pass = 0; pass < maxPasses; pass++) {
+			if (fixVerticalOverlaps(threshold) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves vertices apart whose vertical edges are horizontally closer than
+	 * the given threshold and overlap vertically by testing all pairs of
+	 * vertices in O(V^2) time.
+	 * 
+	 * @param threshold
+	 *            minimum horizontal distance between vertical edges
+	 * @return the number of moves made
+	 */
+	public int fixVerticalOverlapsPairwise(double threshold) {
+		rotatedSinceLayout = null;
+		int numberOfMoves = 0;
 		for (int i = 0; i < vertices.length - 1; i++) {
 			Vertex u = vertices[i];
 
 			for (int j = i + 1; j < vertices.length; j++) {
 				Vertex v = vertices[j];
 
-				if (Math.abs(u.getX() - v.getX()) < threshold) {
-					// horizontal overlap
-					Vertex lower, higher;
-					if (u.getHeight() < v.getHeight()) {
-						lower = u;
-						higher = v;
+				if (fixVerticalOverlap(u, v, threshold)) {
+					numberOfMoves++;
+				}
+			}
+		}
+		return numberOfMoves;
+	}
+
+	private boolean fixVerticalOverlap(Vertex u, Vertex v, double threshold) {
+		if (Math.abs(u.getX() - v.getX()) < threshold) {
+			// horizontal overlap
+			Vertex lower, higher;
+			if (u.getHeight() < v.getHeight()) {
+				lower = u;
+				higher = v;
+			} else {
+				lower = v;
+				higher = u;
+			}
+
+			if (higher.getHeight() < lower.getParent().getHeight()) {
+				// vertical overlap
+				if (higher.getParent().getHeight() < lower.getParent().getHeight()) {
+					// lower vertical nests higher vertical
+					// end of higher determines direction of move
+					if (higher.getX() < higher.getParent().getX()) {
+						moveLeftRight(lower, higher, threshold);
 					} else {
-						lower = v;
-						higher = u;
+						moveLeftRight(higher, lower, threshold);
 					}
-
-					if (higher.getHeight() < lower.getParent().getHeight()) {
-						// vertical overlap
-						if (higher.getParent().getHeight() < lower.getParent().getHeight()) {
-							// lower vertical nests higher vertical
-							// end of higher determines direction of move
-							if (higher.getX() < higher.getParent().getX()) {
-								moveLeftRight(lower, higher, threshold);
-							} else {
-								moveLeftRight(higher, lower, threshold);
-							}
-						} else {
-							// lower vertical and higher vertical overlap
-							// end of lower determines direction of move
-							if (lower.getX() < lower.getParent().getX()) {
-								moveLeftRight(higher, lower, threshold);
-							} else {
-								moveLeftRight(lower, higher, threshold);
-							}
-						}
+				} else {
+					// lower vertical and higher vertical overlap
+					// end of lower determines direction of move
+					if (lower.getX() < lower.getParent().getX()) {
+						moveLeftRight(higher, lower, threshold);
+					} else {
+						moveLeftRight(lower, higher, threshold);
 					}
 				}
+				return true;
 			}
 		}
+		return false;
 	}
 
 	private void moveLeftRight(Vertex left, Vertex right, double d) {
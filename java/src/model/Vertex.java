@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Arrays;
+
 public class Vertex {
 
 	/** index used in model to manage vertices of a graph */
@@ -39,7 +41,8 @@ public class Vertex {
 	private Vertex secondChild;
 	private boolean firstChildIsLeftChild = true;
 
-	private Vertex[] clade;
+	/** Tree containing this vertex, whose clade intervals depend on rotations. */
+	private Tree tree;
 
 	// if it is a leaf
 	private String taxonName = null;
@@ -103,10 +106,10 @@ public class Vertex {
 		}
 
 		if (!this.isFixed()) {
-			if (toBeLeftVertex != firstChild) {
-				this.firstChildIsLeftChild = false;
-			} else {
-				this.firstChildIsLeftChild = true;
+			boolean firstChildIsLeftChild = (toBeLeftVertex == firstChild);
+			if (this.firstChildIsLeftChild != firstChildIsLeftChild) {
+				this.firstChildIsLeftChild = firstChildIsLeftChild;
+				notifyRotated();
 			}
 		} else {
 			System.out.println("Request to set left child of fixed vertex! - " + this.toString());
@@ -115,13 +118,30 @@ public class Vertex {
 
 	public void rotate() {
 		this.firstChildIsLeftChild = !this.firstChildIsLeftChild;
+		notifyRotated();
+	}
+
+	private void notifyRotated() {
+		if (tree != null) {
+			tree.rotated(this);
+		}
+	}
+
+	void setTree(Tree tree) {
+		this.tree = tree;
 	}
 
 	public void rotateDeep() {
-		this.rotate();
-		if (!this.isLeaf()) {
-			this.getFirstChild().rotateDeep();
-			this.getSecondChild().rotateDeep();
+		Vertex[] stack = new Vertex[this.getSubtreeSize()];
+		int size = 0;
+		stack[size++] = this;
+		while (size > 0) {
+			Vertex vertex = stack[--size];
+			vertex.rotate();
+			if (!vertex.isLeaf()) {
+				stack[size++] = vertex.getSecondChild();
+				stack[size++] = vertex.getFirstChild();
+			}
 		}
 	}
 
@@ -268,25 +288,41 @@ public class Vertex {
 		return cladeSize;
 	}
 
+	/**
+	 * Returns the leaves in the subtree of this vertex in the order of the
+	 * current embedding. The returned array is a copy, so each call takes
+	 * O(clade size) time and memory.
+	 * 
+	 * @return the leaves in the subtree of this vertex in order
+	 * @deprecated iterate over the clade interval from
+	 *             {@link Tree#getCladeStart(Vertex)} to
+	 *             {@link Tree#getCladeEnd(Vertex)} of
+	 *             {@link Tree#getLeavesInOrder()} instead, which does not
+	 *             allocate
+	 */
+	@Deprecated
 	public Vertex[] getClade() {
-		if (this.clade != null) {
-			return clade;
-		} else {
-			this.clade = new Vertex[this.getCladeSize()];
-			if (this.isLeaf()) {
-				this.clade[0] = this;
+		if (tree != null) {
+			return Arrays.copyOfRange(tree.getLeavesInOrder(), tree.getCladeStart(this),
+					tree.getCladeEnd(this));
+		}
+
+		// not part of a tree yet
+		Vertex[] clade = new Vertex[this.getCladeSize()];
+		Vertex[] stack = new Vertex[this.getSubtreeSize()];
+		int size = 0;
+		int i = 0;
+		stack[size++] = this;
+		while (size > 0) {
+			Vertex vertex = stack[--size];
+			if (vertex.isLeaf()) {
+				clade[i++] = vertex;
 			} else {
-				int i = 0;
-				for (Vertex leaf : this.getLeftChild().getClade()) {
-					clade[i++] = leaf;
-				}
-				for (Vertex leaf : this.getRightChild().getClade()) {
-					clade[i++] = leaf;
-				}
+				stack[size++] = vertex.getRightChild();
+				stack[size++] = vertex.getLeftChild();
 			}
-
-			return clade;
 		}
+		return clade;
 	}
 
 	public int getSubtreeSize() {
@@ -311,6 +347,14 @@ public class Vertex {
 
 	public void setX(double x) {
 		this.x = x;
+		if (tree != null) {
+			tree.invalidateLayout();
+		}
+	}
+
+	/** Sets the x-coordinate as part of a layout of the tree. */
+	void setLayoutX(double x) {
+		this.x = x;
 	}
 
 	public double getY() {
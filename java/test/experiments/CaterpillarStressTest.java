@@ -0,0 +1,199 @@
+package experiments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import algorithms.DPGeophylogenyOrderer;
+import algorithms.DPGeophylogenyOrderer.DPMode;
+import algorithms.DPGeophylogenyOrderer.DPStrategy;
+import algorithms.TopDownGeophylogenyOrderer;
+import io.GeophylogenyIO;
+import io.TreeParser;
+import model.Embedding;
+import model.Geophylogeny;
+import model.Site;
+import model.Tree;
+import model.Vertex;
+
+/**
+ * Runs the routines that used to recurse per level on a caterpillar with 200k
+ * leaves, whose depth would overflow the call stack, and reports the
+ * throughput of each step. The orderers take quadratic time on a caterpillar
+ * and run on a smaller one.
+ */
+public class CaterpillarStressTest {
+
+	private static final int NUMBER_OF_LEAVES = 200_000;
+
+	/** Number of leaves for the orderers, still deep enough to overflow. */
+	private static final int NUMBER_OF_LEAVES_TO_ORDER = 20_000;
+
+	@TempDir
+	static Path directory;
+
+	private static File nexusFile;
+
+	/** Writes the caterpillar ((..((1,2),3),..),n) as NEXUS file. */
+	@BeforeAll
+	static void writeCaterpillar() throws IOException {
+		StringBuilder nexus = new StringBuilder("#NEXUS\n\nBegin taxa;\n");
+		nexus.append("\tDimensions ntax=").append(NUMBER_OF_LEAVES).append(";\n");
+		nexus.append("\tTranslate\n");
+		for (int i = 1; i <= NUMBER_OF_LEAVES; i++) {
+			nexus.append("\t\t").append(i).append(" t").append(i).append(",\n");
+		}
+		nexus.append(";\ntree STATE_0 = ");
+		nexus.append("(".repeat(NUMBER_OF_LEAVES - 1)).append("1:1.0");
+		for (int i = 2; i <= NUMBER_OF_LEAVES; i++) {
+			nexus.append(",").append(i).append(":1.0)");
+			if (i < NUMBER_OF_LEAVES) {
+				nexus.append(":1.0");
+			}
+		}
+		nexus.append(";\nEnd;\n");
+		nexusFile = directory.resolve("caterpillar.trees").toFile();
+		Files.writeString(nexusFile.toPath(), nexus);
+	}
+
+	@Test
+	public void parseCopyAndWriteCaterpillar() throws IOException {
+		long start = System.nanoTime();
+		Tree tree = new TreeParser().readTrees(nexusFile, "caterpillar").get(0);
+		report("parse", start, NUMBER_OF_LEAVES);
+		assertEquals(NUMBER_OF_LEAVES, tree.getNumberOfLeaves());
+		assertEquals(NUMBER_OF_LEAVES - 1, tree.getMaxDiscreteDepth());
+		Vertex[] leaves = tree.getLeavesInOrder();
+		for (int i = 0; i < leaves.length; i++) {
+			assertEquals(i + 1, leaves[i].getID());
+		}
+
+		Geophylogeny geophylogeny = new Geophylogeny(tree, createSites(tree, new Random(1)), NUMBER_OF_LEAVES, 200,
+				"caterpillar");
+
+		start = System.nanoTime();
+		Geophylogeny copy = GeophylogenyExperimenter.cloneGeophylogeny(geophylogeny);
+		report("copy", start, NUMBER_OF_LEAVES);
+		assertSameLeafOrder(geophylogeny, copy);
+		assertEquals(NUMBER_OF_LEAVES - 1, copy.getTree().getMaxDiscreteDepth());
+
+		String jsonFile = directory.resolve("caterpillar.json").toString();
+		start = System.nanoTime();
+		GeophylogenyIO.writeGeophylogenyToJSON(geophylogeny, jsonFile);
+		Geophylogeny read = GeophylogenyIO.readGeophylogenyFromJSON(jsonFile);
+		report("json round trip", start, NUMBER_OF_LEAVES);
+		assertSameLeafOrder(geophylogeny, read);
+
+		start = System.nanoTime();
+		tree.initDepths();
+		report("init depths", start, NUMBER_OF_LEAVES);
+		// every edge has length 1, so leaf 1 is as deep as it is far from the root
+		assertEquals(NUMBER_OF_LEAVES - 1, leaves[0].getDepth());
+
+		start = System.nanoTime();
+		tree.randomizeEmbedding(new Random(2));
+		report("randomize embedding", start, NUMBER_OF_LEAVES);
+		assertIsLeafOrder(tree);
+
+		geophylogeny.computeXCoordinates();
+		start = System.nanoTime();
+		boolean fixed = tree.fixVerticalOverlaps(0.25, 10);
+		report("fix vertical overlaps", start, NUMBER_OF_LEAVES);
+		assertTrue(fixed);
+		assertEquals(0, tree.fixVerticalOverlaps(0.25));
+	}
+
+	@Test
+	public void orderCaterpillar() {
+		Random random = new Random(3);
+		Tree tree = new Tree(createCaterpillarRoot(NUMBER_OF_LEAVES_TO_ORDER), NUMBER_OF_LEAVES_TO_ORDER);
+		Geophylogeny geophylogeny = new Geophylogeny(tree, createSites(tree, random), NUMBER_OF_LEAVES_TO_ORDER, 200,
+				"caterpillar");
+		double initialDistance = computeHorizontalDistance(geophylogeny);
+
+		long start = System.nanoTime();
+		Embedding topDown = new TopDownGeophylogenyOrderer(geophylogeny).computeEmbedding();
+		report("top-down order", start, NUMBER_OF_LEAVES_TO_ORDER);
+		topDown.applyTo(geophylogeny);
+		assertIsLeafOrder(tree);
+
+		start = System.nanoTime();
+		Embedding dp = new DPGeophylogenyOrderer(geophylogeny, DPStrategy.HorizontalDistance, DPMode.LowMemory)
+				.computeEmbedding();
+		report("dynamic program order", start, NUMBER_OF_LEAVES_TO_ORDER);
+		dp.applyTo(geophylogeny);
+		assertIsLeafOrder(tree);
+		// the dynamic program is optimal for this objective
+		assertTrue(computeHorizontalDistance(geophylogeny) <= initialDistance);
+	}
+
+	/** Creates the caterpillar ((..((1,2),3),..),n) with unit branch lengths. */
+	private static Vertex createCaterpillarRoot(int numberOfLeaves) {
+		Vertex root = new Vertex(1);
+		for (int i = 2; i <= numberOfLeaves; i++) {
+			Vertex leaf = new Vertex(i);
+			leaf.setBranchLengthIncoming(1.0);
+			root.setBranchLengthIncoming(1.0);
+			root = new Vertex(numberOfLeaves + i - 1, root, leaf);
+		}
+		return root;
+	}
+
+	/** Creates a site at a random x-coordinate for each leaf. */
+	private static Site[] createSites(Tree tree, Random random) {
+		Vertex[] leaves = tree.getLeavesInIndexOrder();
+		Site[] sites = new Site[leaves.length];
+		for (int i = 0; i < leaves.length; i++) {
+			sites[i] = new Site(random.nextInt(leaves.length), 100);
+			sites[i].setLeaf(leaves[i]);
+		}
+		return sites;
+	}
+
+	private static double computeHorizontalDistance(Geophylogeny geophylogeny) {
+		Vertex[] leaves = geophylogeny.getTree().getLeavesInOrder();
+		double distance = 0;
+		for (int position = 0; position < leaves.length; position++) {
+			distance += Math.abs(geophylogeny.getXByPosition(position) - geophylogeny.getSiteOfLeaf(leaves[position])
+					.getX());
+		}
+		return distance;
+	}
+
+	/** Checks that every leaf is at exactly one position of the leaf order. */
+	private static void assertIsLeafOrder(Tree tree) {
+		Vertex[] leaves = tree.getLeavesInOrder();
+		assertEquals(tree.getNumberOfLeaves(), leaves.length);
+		boolean[] seen = new boolean[leaves.length];
+		for (Vertex leaf : leaves) {
+			assertTrue(leaf.isLeaf() && !seen[leaf.getIndex()]);
+			seen[leaf.getIndex()] = true;
+		}
+	}
+
+	private static void assertSameLeafOrder(Geophylogeny expected, Geophylogeny actual) {
+		Vertex[] expectedLeaves = expected.getTree().getLeavesInOrder();
+		Vertex[] actualLeaves = actual.getTree().getLeavesInOrder();
+		assertEquals(expectedLeaves.length, actualLeaves.length);
+		for (int i = 0; i < expectedLeaves.length; i++) {
+			assertEquals(expectedLeaves[i].getID(), actualLeaves[i].getID());
+			assertTrue(actual.getSiteOfLeaf(actualLeaves[i]).getX() == expected.getSiteOfLeaf(expectedLeaves[i])
+					.getX());
+		}
+	}
+
+	private static void report(String step, long start, int numberOfLeaves) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("caterpillar %s: %.3f s, %.2e vertices/s%n", step, seconds,
+				(2.0 * numberOfLeaves - 1) / seconds);
+	}
+}
@@ -0,0 +1,104 @@
+package io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import experiments.GeophylogenyInstanceCreater;
+import model.Geophylogeny;
+
+/**
+ * Checks that the {@link GeophylogenyBatchDrawer} blocks submitting while the
+ * maximum number of jobs is pending, draws all jobs before it is closed, and
+ * counts failed jobs.
+ */
+public class GeophylogenyBatchDrawerTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void submitBlocksWhileJobsArePending() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Path first = directory.resolve("first.svg");
+		Path second = directory.resolve("second.svgz");
+
+		GeophylogenyBatchDrawer drawer = new GeophylogenyBatchDrawer(1, 1);
+		drawer.submit(new HeldGeophylogeny(createInstance(1), started, release), first.toString());
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		CompletableFuture<?> secondSubmit = CompletableFuture
+				.runAsync(() -> drawer.submit(createInstance(2), second.toString()));
+		Thread.sleep(200);
+		assertFalse(secondSubmit.isDone(), "second job submitted while first is held");
+
+		release.countDown();
+		secondSubmit.get(10, TimeUnit.SECONDS);
+		drawer.close();
+
+		assertTrue(Files.size(first) > 0);
+		assertTrue(Files.size(second) > 0);
+		assertEquals(2, drawer.getNumberOfDrawn());
+		assertEquals(0, drawer.getNumberOfFailed());
+	}
+
+	@Test
+	public void closeDrainsAllJobsAndCountsFailures() throws IOException {
+		// a regular file cannot be the directory of a drawing
+		Path notADirectory = Files.createFile(directory.resolve("file"));
+		int numberOfJobs = 5;
+
+		GeophylogenyBatchDrawer drawer = new GeophylogenyBatchDrawer(1, 1);
+		for (int i = 0; i < numberOfJobs; i++) {
+			drawer.submit(createInstance(i), directory.resolve("drawing" + i + ".svg").toString());
+		}
+		drawer.submit(createInstance(numberOfJobs), notADirectory.resolve("drawing.svg").toString());
+		drawer.close();
+
+		for (int i = 0; i < numberOfJobs; i++) {
+			assertTrue(Files.size(directory.resolve("drawing" + i + ".svg")) > 0);
+		}
+		assertEquals(numberOfJobs, drawer.getNumberOfDrawn());
+		assertEquals(1, drawer.getNumberOfFailed());
+	}
+
+	private static Geophylogeny createInstance(int seed) {
+		return GeophylogenyInstanceCreater.generateUniformInstance(500, 300, 20, "test", seed);
+	}
+
+	/** Geophylogeny whose drawing waits until it is released. */
+	private static class HeldGeophylogeny extends Geophylogeny {
+
+		private CountDownLatch started;
+		private CountDownLatch release;
+
+		HeldGeophylogeny(Geophylogeny geophylogeny, CountDownLatch started, CountDownLatch release) {
+			super(geophylogeny.getTree(), geophylogeny.getSites(), geophylogeny.getMapWidth(),
+					geophylogeny.getMapHeight(), geophylogeny.getName());
+			this.started = started;
+			this.release = release;
+		}
+
+		@Override
+		public void computeXCoordinates() {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.computeXCoordinates();
+		}
+	}
+}
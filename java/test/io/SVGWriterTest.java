@@ -0,0 +1,90 @@
+package io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the fast path for numbers of {@link SVGWriter} with
+ * {@link Double#toString(double)} on random numbers in the range where that
+ * method does not use exponents.
+ */
+public class SVGWriterTest {
+
+	private static final int NUMBER_OF_VALUES = 200_000;
+
+	@Test
+	public void shortDecimalsAreWrittenLikeDoubleToString() throws IOException {
+		Random random = new Random(1);
+		List<Double> values = new ArrayList<Double>();
+		for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+			// at most three decimals, so always on the fast path
+			int numberOfDecimals = random.nextInt(4);
+			double scale = Math.pow(10, numberOfDecimals);
+			double value = Math.rint(randomMagnitude(random) * scale) / scale;
+			if (value >= 1e-3 && value < 1e7) {
+				values.add(random.nextBoolean() ? value : -value);
+			}
+		}
+		List<Boolean> written = new ArrayList<Boolean>();
+		List<String> output = writeShortDecimals(values, written);
+		for (int i = 0; i < values.size(); i++) {
+			assertTrue(written.get(i), "fast path not taken for " + values.get(i));
+			assertEquals(Double.toString(values.get(i)), output.get(i));
+		}
+	}
+
+	@Test
+	public void otherNumbersAreWrittenLikeDoubleToStringOrNotAtAll() throws IOException {
+		Random random = new Random(2);
+		List<Double> values = new ArrayList<Double>(List.of(0.0, -0.0, 1e-3, -1e-3, 9999999.999, 1e7,
+				9.999999999999999e-4, 0.1 + 0.2, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY));
+		for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+			double value = randomMagnitude(random);
+			values.add(random.nextBoolean() ? value : -value);
+		}
+		List<Boolean> written = new ArrayList<Boolean>();
+		List<String> output = writeShortDecimals(values, written);
+		for (int i = 0; i < values.size(); i++) {
+			if (written.get(i)) {
+				assertEquals(Double.toString(values.get(i)), output.get(i));
+			} else {
+				assertFalse(values.get(i) == 0, "zero not written");
+			}
+		}
+	}
+
+	/** Returns a number between 1e-3 and 1e7 that is uniform in log scale. */
+	private static double randomMagnitude(Random random) {
+		return Math.pow(10, -3 + 10 * random.nextDouble());
+	}
+
+	/**
+	 * Writes the given values separated by spaces into an attribute and
+	 * returns the values as written; values that were not written are empty.
+	 */
+	private static List<String> writeShortDecimals(List<Double> values, List<Boolean> written)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (SVGWriter writer = new SVGWriter(bytes)) {
+			writer.startElement("path").startAttribute("d");
+			for (double value : values) {
+				written.add(writer.writeShortDecimal(value));
+				writer.text(" ");
+			}
+			writer.endAttribute();
+		}
+		String svg = bytes.toString(StandardCharsets.UTF_8);
+		String data = svg.substring(svg.indexOf("d=\"") + 3, svg.lastIndexOf('"'));
+		return List.of(data.split(" ", -1));
+	}
+}
@@ -0,0 +1,80 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that converting a tree to a {@link CompactTree} and back keeps the
+ * topology, the embedding, and all attributes of the vertices and the tree.
+ */
+public class CompactTreeTest {
+
+	@Test
+	public void roundTripKeepsTree() {
+		Random random = new Random(1);
+		for (int n : new int[] { 1, 2, 3, 10, 500 }) {
+			Tree tree = generateTree(n, random);
+			Tree copy = CompactTree.fromTree(tree).toTree();
+
+			String message = "n=" + n;
+			assertEquals(tree.getName(), copy.getName(), message);
+			assertEquals(tree.getStateNumber(), copy.getStateNumber(), message);
+			Vertex[] leaves = tree.getLeavesInOrder();
+			Vertex[] copiedLeaves = copy.getLeavesInOrder();
+			for (int position = 0; position < n; position++) {
+				assertEquals(leaves[position].getID(), copiedLeaves[position].getID(), message);
+			}
+			for (Vertex vertex : tree.getVertices()) {
+				Vertex copied = copy.getVertices()[vertex.getIndex()];
+				assertEquals(vertex.getID(), copied.getID(), message);
+				assertEquals(vertex.getTaxonName(), copied.getTaxonName(), message);
+				assertEquals(vertex.getDiscreteDepth(), copied.getDiscreteDepth(), message);
+				assertEquals(vertex.getDepth(), copied.getDepth(), message);
+				assertEquals(vertex.getHeight(), copied.getHeight(), message);
+				assertEquals(vertex.getBranchLengthIncoming(), copied.getBranchLengthIncoming(), message);
+				assertEquals(vertex.getPopulationSize(), copied.getPopulationSize(), message);
+				assertEquals(vertex.isFixed(), copied.isFixed(), message);
+				assertEquals(vertex.hasParent() ? vertex.getParent().getID() : -1,
+						copied.hasParent() ? copied.getParent().getID() : -1, message);
+			}
+		}
+	}
+
+	/**
+	 * Merges random pairs of subtrees with random branch lengths, then rotates
+	 * and fixes random inner vertices.
+	 */
+	private static Tree generateTree(int n, Random random) {
+		Vertex[] subtrees = new Vertex[n];
+		for (int i = 0; i < n; i++) {
+			subtrees[i] = new Vertex(i + 1);
+			subtrees[i].setTaxonName("taxon" + (i + 1));
+		}
+		int id = n + 1;
+		for (int size = n; size > 1; size--) {
+			int first = random.nextInt(size);
+			Vertex firstSubtree = subtrees[first];
+			subtrees[first] = subtrees[size - 1];
+			int second = random.nextInt(size - 1);
+			firstSubtree.setBranchLengthIncoming(random.nextDouble());
+			subtrees[second].setBranchLengthIncoming(random.nextDouble());
+			subtrees[second] = new Vertex(id++, firstSubtree, subtrees[second]);
+		}
+		Tree tree = new Tree(subtrees[0], n, 42);
+		tree.setName("random");
+		tree.initDepths();
+		for (Vertex vertex : tree.getVertices()) {
+			vertex.setPopulationSize(random.nextInt(1000));
+			if (!vertex.isLeaf() && random.nextBoolean()) {
+				vertex.rotate();
+			}
+			if (!vertex.isLeaf() && random.nextInt(4) == 0) {
+				vertex.setFixed();
+			}
+		}
+		return tree;
+	}
+}
@@ -0,0 +1,91 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import experiments.GeophylogenyInstanceCreater;
+
+/**
+ * Compares the incremental update of the x-coordinates after rotations with
+ * computing them from scratch.
+ */
+public class GeophylogenyLayoutTest {
+
+	@Test
+	public void incrementalLayoutAfterRandomRotations() {
+		Random random = new Random(1);
+		for (int n : new int[] { 2, 10, 100, 1000 }) {
+			Geophylogeny geophylogeny = GeophylogenyInstanceCreater.generateUniformInstance(500, 300, n, "test", n);
+			geophylogeny.computeXCoordinates();
+			for (int round = 0; round < 50; round++) {
+				// mostly few rotations, sometimes so many that the layout starts over
+				int numberOfRotations = (round % 10 == 9) ? 2 * n : 1 + random.nextInt(5);
+				rotateRandomVertices(geophylogeny.getTree(), random, numberOfRotations);
+				geophylogeny.computeXCoordinates();
+				assertLayoutFromScratch(geophylogeny, "n=" + n + " round=" + round);
+			}
+		}
+	}
+
+	@Test
+	public void treeSharedByTwoGeophylogenies() {
+		Random random = new Random(2);
+		Geophylogeny first = GeophylogenyInstanceCreater.generateUniformInstance(500, 300, 200, "test", 3);
+		Geophylogeny second = new Geophylogeny(first.getTree(), first.getSites(), 800, 300, "wide");
+		for (int round = 0; round < 50; round++) {
+			rotateRandomVertices(first.getTree(), random, 1 + random.nextInt(5));
+			Geophylogeny geophylogeny = random.nextBoolean() ? first : second;
+			geophylogeny.computeXCoordinates();
+			assertLayoutFromScratch(geophylogeny, "round=" + round);
+		}
+	}
+
+	@Test
+	public void coordinatesSetOutsideOfLayout() {
+		Random random = new Random(3);
+		Geophylogeny geophylogeny = GeophylogenyInstanceCreater.generateUniformInstance(500, 300, 200, "test", 4);
+		Vertex[] vertices = geophylogeny.getTree().getVertices();
+		geophylogeny.computeXCoordinates();
+		for (int round = 0; round < 50; round++) {
+			rotateRandomVertices(geophylogeny.getTree(), random, 1 + random.nextInt(5));
+			vertices[random.nextInt(vertices.length)].setX(-1);
+			geophylogeny.computeXCoordinates();
+			assertLayoutFromScratch(geophylogeny, "round=" + round);
+		}
+	}
+
+	private static void rotateRandomVertices(Tree tree, Random random, int numberOfRotations) {
+		Vertex[] innerVertices = tree.getInnnerVertices();
+		for (int i = 0; i < numberOfRotations; i++) {
+			innerVertices[random.nextInt(innerVertices.length)].rotate();
+		}
+	}
+
+	/**
+	 * Checks that each leaf is at the x-coordinate of its position and each
+	 * inner vertex is centered above its children.
+	 */
+	private static void assertLayoutFromScratch(Geophylogeny geophylogeny, String message) {
+		Tree tree = geophylogeny.getTree();
+		Vertex[] leaves = tree.getLeavesInOrder();
+		for (int position = 0; position < leaves.length; position++) {
+			assertEquals(geophylogeny.getXByPosition(position), leaves[position].getX(), message);
+		}
+		Vertex[] preOrder = tree.getVerticesInPreOrder();
+		double[] expectedX = new double[preOrder.length];
+		for (int position = 0; position < leaves.length; position++) {
+			expectedX[leaves[position].getIndex()] = geophylogeny.getXByPosition(position);
+		}
+		for (int i = preOrder.length - 1; i >= 0; i--) {
+			Vertex vertex = preOrder[i];
+			if (!vertex.isLeaf()) {
+				expectedX[vertex.getIndex()] = (expectedX[vertex.getLeftChild().getIndex()]
+						+ expectedX[vertex.getRightChild().getIndex()]) / 2;
+			}
+			assertEquals(expectedX[vertex.getIndex()], vertex.getX(), message);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import experiments.GeophylogenyInstanceCreater;
+import model.Leader.GeophylogenyLeaderType;
+
+/**
+ * Compares the sweeps of {@link LeaderCrossingCounter} with testing every pair
+ * of leaders, on random instances and on degenerate ones that make the sweeps
+ * fall back or take their special cases.
+ */
+public class LeaderCrossingCounterTest {
+
+	/** Fewer repetitions for larger n, as the pairwise count is quadratic. */
+	private static int repetitions(int n) {
+		return Math.max(2, Math.min(50, 20000 / Math.max(n, 1)));
+	}
+
+	/** Random leaders, so with many crossings; large n hit the swap cap. */
+	@Test
+	public void randomInstances() {
+		Random random = new Random(1);
+		for (int n : new int[] { 0, 1, 2, 3, 10, 50, 200, 1000 }) {
+			for (int repetition = 0; repetition < repetitions(n); repetition++) {
+				Leaders leaders = Leaders.random(random, n, 100.0, 0.0);
+				leaders.assertCountsEqual("random n=" + n);
+			}
+		}
+	}
+
+	/**
+	 * Sites roughly below their leaves, so with few crossings; the s-sweep
+	 * runs to the end without hitting the swap cap.
+	 */
+	@Test
+	public void nearlyPlanarInstances() {
+		Random random = new Random(2);
+		for (int n : new int[] { 10, 100, 1000, 2000 }) {
+			for (int repetition = 0; repetition < repetitions(n); repetition++) {
+				Leaders leaders = Leaders.nearlyPlanar(random, n, 0.5 / n);
+				leaders.assertCountsEqual("nearly planar n=" + n);
+			}
+		}
+	}
+
+	/** Integer coordinates, so with shared leaf x-coordinates and equal heights. */
+	@Test
+	public void sharedLeavesAndEqualHeights() {
+		Random random = new Random(3);
+		for (int n : new int[] { 2, 5, 20, 100, 500 }) {
+			for (int repetition = 0; repetition < repetitions(n); repetition++) {
+				Leaders leaders = Leaders.onGrid(random, n, 1 + n / 4, 1 + n / 8, false);
+				leaders.assertCountsEqual("grid n=" + n);
+			}
+		}
+	}
+
+	/** Few distinct heights with distinct leaves, for the mutual crossings. */
+	@Test
+	public void equalHeightsWithDistinctLeaves() {
+		Random random = new Random(4);
+		for (int n : new int[] { 2, 5, 20, 100, 500 }) {
+			for (int repetition = 0; repetition < repetitions(n); repetition++) {
+				Leaders leaders = Leaders.random(random, n, 100.0, 0.0);
+				for (int i = 0; i < n; i++) {
+					leaders.siteY[i] = 1 + random.nextInt(3);
+				}
+				leaders.assertCountsEqual("equal heights n=" + n);
+			}
+		}
+	}
+
+	/** Sites on or above the line of the leaves, where the sweeps fall back. */
+	@Test
+	public void sitesNotBelowLeaves() {
+		Random random = new Random(5);
+		for (int n : new int[] { 2, 5, 20, 100 }) {
+			for (int repetition = 0; repetition < repetitions(n); repetition++) {
+				Leaders leaders = Leaders.onGrid(random, n, 2 * n, n, true);
+				leaders.siteY[random.nextInt(n)] = 0;
+				leaders.assertCountsEqual("site on y=0 n=" + n);
+				leaders.siteY[random.nextInt(n)] = -1;
+				leaders.assertCountsEqual("site above y=0 n=" + n);
+			}
+		}
+	}
+
+	/**
+	 * Splits from unbalanced, which test all pairs, to balanced, which sweep,
+	 * with and without given sorted orders.
+	 */
+	@Test
+	public void crossingsBetweenGroups() {
+		Random random = new Random(6);
+		for (int n : new int[] { 2, 20, 200, 2000 }) {
+			for (int repetition = 0; repetition < repetitions(n) / 5; repetition++) {
+				Leaders[] instances = { Leaders.random(random, n, 100.0, 0.0),
+						Leaders.nearlyPlanar(random, n, 0.5 / n),
+						Leaders.onGrid(random, n, 1 + n / 4, 1 + n / 8, false) };
+				for (Leaders leaders : instances) {
+					for (int split : new int[] { -1, 0, 1, 2, n / 10, n / 3, n / 2, n - 1, n, n + 1 }) {
+						leaders.assertCountsBetweenEqual(split, "n=" + n + " split=" + split);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The counts of geophylogenies are the same as testing every pair of
+	 * {@link Leader}s.
+	 */
+	@Test
+	public void geophylogenies() {
+		for (int n : new int[] { 5, 20, 100 }) {
+			for (long seed = 0; seed < 5; seed++) {
+				Geophylogeny geophylogeny = GeophylogenyInstanceCreater.generateUniformInstance(500, 300, n,
+						"test", seed);
+				for (GeophylogenyLeaderType type : new GeophylogenyLeaderType[] { GeophylogenyLeaderType.S,
+						GeophylogenyLeaderType.PO }) {
+					geophylogeny.setLeaderType(type);
+					geophylogeny.computeXCoordinates();
+					int expected = countWithLeaders(geophylogeny);
+					String message = type + " n=" + n + " seed=" + seed;
+					assertEquals(expected, geophylogeny.computeNumberOfCrossingsPairwise(), message);
+					assertEquals(expected, geophylogeny.computeNumberOfCrossings(), message);
+				}
+			}
+		}
+	}
+
+	private static int countWithLeaders(Geophylogeny geophylogeny) {
+		Vertex[] leaves = geophylogeny.getTree().getLeavesInOrder();
+		Leader[] leaders = new Leader[leaves.length];
+		for (int i = 0; i < leaves.length; i++) {
+			leaders[i] = new Leader(leaves[i], geophylogeny.getSiteOfLeaf(leaves[i]),
+					geophylogeny.getLeaderType());
+		}
+		int numberOfCrossings = 0;
+		for (int i = 0; i < leaders.length; i++) {
+			for (int j = i + 1; j < leaders.length; j++) {
+				numberOfCrossings += leaders[i].crossesLeader(leaders[j]) ? 1 : 0;
+			}
+		}
+		return numberOfCrossings;
+	}
+
+	private static class Leaders {
+
+		final int n;
+		final double[] leafX;
+		final double[] siteX;
+		final double[] siteY;
+
+		Leaders(int n) {
+			this.n = n;
+			this.leafX = new double[n];
+			this.siteX = new double[n];
+			this.siteY = new double[n];
+		}
+
+		static Leaders random(Random random, int n, double width, double minHeight) {
+			Leaders leaders = new Leaders(n);
+			for (int i = 0; i < n; i++) {
+				leaders.leafX[i] = width * random.nextDouble();
+				leaders.siteX[i] = width * random.nextDouble();
+				leaders.siteY[i] = minHeight + width * (1 - random.nextDouble());
+			}
+			return leaders;
+		}
+
+		/** Sites close to below their leaves, shifted by the given noise. */
+		static Leaders nearlyPlanar(Random random, int n, double noise) {
+			Leaders leaders = new Leaders(n);
+			for (int i = 0; i < n; i++) {
+				leaders.leafX[i] = random.nextDouble();
+				leaders.siteX[i] = leaders.leafX[i] + noise * random.nextGaussian();
+				leaders.siteY[i] = 0.1 + random.nextDouble();
+			}
+			return leaders;
+		}
+
+		static Leaders onGrid(Random random, int n, int width, int height, boolean distinctLeaves) {
+			Leaders leaders = new Leaders(n);
+			for (int i = 0; i < n; i++) {
+				leaders.leafX[i] = distinctLeaves ? i : random.nextInt(width);
+				leaders.siteX[i] = random.nextInt(width);
+				leaders.siteY[i] = 1 + random.nextInt(height);
+			}
+			return leaders;
+		}
+
+		void assertCountsEqual(String message) {
+			int expectedS = countPairwise(GeophylogenyLeaderType.S);
+			assertEquals(expectedS, LeaderCrossingCounter.countSLeaderCrossingsPairwise(leafX, siteX, siteY, n),
+					"s-leaders pairwise " + message);
+			assertEquals(expectedS, LeaderCrossingCounter.countSLeaderCrossings(leafX, siteX, siteY, n),
+					"s-leaders " + message);
+
+			int expectedPO = countPairwise(GeophylogenyLeaderType.PO);
+			assertEquals(expectedPO, LeaderCrossingCounter.countPOLeaderCrossingsPairwise(leafX, siteX, siteY, n),
+					"po-leaders pairwise " + message);
+			assertEquals(expectedPO, LeaderCrossingCounter.countPOLeaderCrossings(leafX, siteX, siteY, n),
+					"po-leaders " + message);
+		}
+
+		void assertCountsBetweenEqual(int split, String message) {
+			int[] byLeaf = LeaderCrossingCounter.sortedIndices(leafX, n);
+			int[] byHeight = LeaderCrossingCounter.sortedIndices(siteY, n);
+
+			int expectedS = countBetweenPairwise(GeophylogenyLeaderType.S, split);
+			assertEquals(expectedS,
+					LeaderCrossingCounter.countSLeaderCrossingsBetween(leafX, siteX, siteY, split, n, null),
+					"s-leaders " + message);
+			assertEquals(expectedS,
+					LeaderCrossingCounter.countSLeaderCrossingsBetween(leafX, siteX, siteY, split, n, byLeaf),
+					"s-leaders sorted " + message);
+
+			int expectedPO = countBetweenPairwise(GeophylogenyLeaderType.PO, split);
+			assertEquals(expectedPO, LeaderCrossingCounter.countPOLeaderCrossingsBetween(leafX, siteX, siteY,
+					split, n, null, null), "po-leaders " + message);
+			assertEquals(expectedPO, LeaderCrossingCounter.countPOLeaderCrossingsBetween(leafX, siteX, siteY,
+					split, n, byLeaf, byHeight), "po-leaders sorted " + message);
+		}
+
+		int countPairwise(GeophylogenyLeaderType type) {
+			int numberOfCrossings = 0;
+			for (int i = 0; i < n; i++) {
+				for (int j = i + 1; j < n; j++) {
+					numberOfCrossings += LeaderKernel.leadersCross(type, leafX[i], siteX[i], siteY[i], leafX[j],
+							siteX[j], siteY[j]) ? 1 : 0;
+				}
+			}
+			return numberOfCrossings;
+		}
+
+		int countBetweenPairwise(GeophylogenyLeaderType type, int split) {
+			int numberOfCrossings = 0;
+			for (int i = 0; i < Math.min(split, n); i++) {
+				for (int j = Math.max(split, 0); j < n; j++) {
+					numberOfCrossings += LeaderKernel.leadersCross(type, leafX[i], siteX[i], siteY[i], leafX[j],
+							siteX[j], siteY[j]) ? 1 : 0;
+				}
+			}
+			return numberOfCrossings;
+		}
+	}
+}